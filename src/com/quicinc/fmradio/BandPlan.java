@@ -0,0 +1,308 @@
+/*
+ * Copyright (c) 2012, Code Aurora Forum. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *        * Redistributions of source code must retain the above copyright
+ *            notice, this list of conditions and the following disclaimer.
+ *        * Redistributions in binary form must reproduce the above copyright
+ *            notice, this list of conditions and the following disclaimer in the
+ *            documentation and/or other materials provided with the distribution.
+ *        * Neither the name of Code Aurora nor
+ *            the names of its contributors may be used to endorse or promote
+ *            products derived from this software without specific prior written
+ *            permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NON-INFRINGEMENT ARE DISCLAIMED.    IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.quicinc.fmradio;
+
+import java.util.Arrays;
+
+import android.hardware.fmradio.FmConfig;
+import android.hardware.fmradio.FmReceiver;
+
+/*
+ * Immutable description of a regional FM band: the FmConfig values the
+ * receiver is configured with, the tuning step and the table of channel
+ * frequencies (kHz) from the lower to the upper limit. One plan per
+ * REGIONAL_BAND_* code of FmSharedPreferences is built once; plans with
+ * the same limits and step share their channel table.
+ */
+public final class BandPlan
+{
+   private static final int EU_BAND = FmReceiver.FM_USER_DEFINED_BAND;
+   private static final int EU_SPACING = FmReceiver.FM_CHSPACE_100_KHZ;
+   private static final int EU_EMPHASIS = FmReceiver.FM_DE_EMP50;
+   private static final int EU_RDS = FmReceiver.FM_RDS_STD_RDS;
+   private static final int EU_LOWER = 87500;
+   private static final int EU_UPPER = 108000;
+
+   /* Used for unknown country codes */
+   public static final BandPlan DEFAULT =
+      new BandPlan(FmSharedPreferences.REGIONAL_BAND_NORTH_AMERICA, EU_BAND,
+                   EU_SPACING, EU_EMPHASIS, EU_RDS, EU_LOWER, EU_UPPER, 100, null);
+
+   private static final BandPlan[] PLANS =
+      new BandPlan[FmSharedPreferences.REGIONAL_BAND_UNITED_STATES + 1];
+
+   static {
+      /*NORTH_AMERICA : 87500 TO 107900 IN 200 KHZ STEPS*/
+      define(FmSharedPreferences.REGIONAL_BAND_NORTH_AMERICA,
+             FmReceiver.FM_US_BAND, FmReceiver.FM_CHSPACE_200_KHZ,
+             FmReceiver.FM_DE_EMP75, FmReceiver.FM_RDS_STD_RBDS, 87500, 107900, 200);
+      /*EUROPE/Default : 87500 TO 108000 IN 100 KHZ STEPS*/
+      europe(FmSharedPreferences.REGIONAL_BAND_EUROPE, EU_LOWER, EU_UPPER);
+      /*JAPAN : 76000 TO 90000 IN 100 KHZ STEPS*/
+      define(FmSharedPreferences.REGIONAL_BAND_JAPAN,
+             FmReceiver.FM_JAPAN_STANDARD_BAND, FmReceiver.FM_CHSPACE_100_KHZ,
+             FmReceiver.FM_DE_EMP75, EU_RDS, 76000, 90000, 100);
+      /*JAPAN_WB : 90000 TO 108000 IN 50 KHZ STEPS*/
+      define(FmSharedPreferences.REGIONAL_BAND_JAPAN_WIDE,
+             FmReceiver.FM_JAPAN_WIDE_BAND, FmReceiver.FM_CHSPACE_50_KHZ,
+             FmReceiver.FM_DE_EMP75, EU_RDS, 90000, 108000, 50);
+
+      /* Country specific */
+      /*AUSTRALIA : 87700 TO 108000 IN 100 KHZ STEPS*/
+      europe(FmSharedPreferences.REGIONAL_BAND_AUSTRALIA, 87700, EU_UPPER);
+      /*AUSTRIA : 87500 TO 108000 IN 50 KHZ STEPS, chip spacing stays 100*/
+      define(FmSharedPreferences.REGIONAL_BAND_AUSTRIA, EU_BAND, EU_SPACING,
+             EU_EMPHASIS, EU_RDS, EU_LOWER, EU_UPPER, 50);
+      /*BELGIUM : 87500 TO 108000 IN 100 KHZ STEPS*/
+      europe(FmSharedPreferences.REGIONAL_BAND_BELGIUM, EU_LOWER, EU_UPPER);
+      /*BRAZIL : 87500 TO 107900 IN 200 KHZ STEP*/
+      define(FmSharedPreferences.REGIONAL_BAND_BRAZIL, FmReceiver.FM_US_BAND,
+             FmReceiver.FM_CHSPACE_200_KHZ, EU_EMPHASIS, EU_RDS,
+             87500, 107900, 200);
+      /*CHINA : 87000 TO 108000 IN 100 KHZ STEPS*/
+      europe(FmSharedPreferences.REGIONAL_BAND_CHINA, 87000, EU_UPPER);
+      /*CZECH : 87500 TO 108000 IN 100 KHZ STEPS*/
+      europe(FmSharedPreferences.REGIONAL_BAND_CZECH, EU_LOWER, EU_UPPER);
+      /*DENMARK : 87500 TO 108000 IN 50 KHZ STEPS*/
+      europe50(FmSharedPreferences.REGIONAL_BAND_DENMARK, EU_LOWER);
+      /*FINLAND : 87500 TO 108000 IN 100 KHZ STEPS*/
+      europe(FmSharedPreferences.REGIONAL_BAND_FINLAND, EU_LOWER, EU_UPPER);
+      /*FRANCE : 87500 TO 108000 IN 100 KHZ STEPS*/
+      europe(FmSharedPreferences.REGIONAL_BAND_FRANCE, EU_LOWER, EU_UPPER);
+      /*GERMANY : 87500 TO 108000 IN 50 KHZ STEPS*/
+      europe50(FmSharedPreferences.REGIONAL_BAND_GERMANY, EU_LOWER);
+      /*GREECE : 87500 TO 108000 IN 50 KHZ STEPS*/
+      europe50(FmSharedPreferences.REGIONAL_BAND_GREECE, EU_LOWER);
+      /*HONG KONG : 87500 TO 108000 IN 100 KHZ STEPS*/
+      europe(FmSharedPreferences.REGIONAL_BAND_HONGKONG, EU_LOWER, EU_UPPER);
+      /*INDIA : 91000 TO 106400 IN 100 KHZ STEPS*/
+      europe(FmSharedPreferences.REGIONAL_BAND_INDIA, 91000, 106400);
+      /*IRELAND : 87500 TO 108000 IN 50 KHZ STEPS*/
+      europe50(FmSharedPreferences.REGIONAL_BAND_IRELAND, EU_LOWER);
+      /*ITALY : 87500 TO 108000 IN 50 KHZ STEPS*/
+      europe50(FmSharedPreferences.REGIONAL_BAND_ITALY, EU_LOWER);
+      /*KOREA : 87500 TO 107900 IN 200 KHZ STEPS*/
+      define(FmSharedPreferences.REGIONAL_BAND_KOREA, FmReceiver.FM_US_BAND,
+             FmReceiver.FM_CHSPACE_200_KHZ, EU_EMPHASIS, EU_RDS,
+             EU_LOWER, 107900, 200);
+      /*MEXICO : 88100 TO 107900 IN 200 KHZ STEPS*/
+      define(FmSharedPreferences.REGIONAL_BAND_MEXICO,
+             FmReceiver.FM_US_BAND, FmReceiver.FM_CHSPACE_200_KHZ,
+             FmReceiver.FM_DE_EMP75, FmReceiver.FM_RDS_STD_RBDS, 88100, 107900, 200);
+      /*NETHERLANDS : 87500 TO 108000 IN 100 KHZ STEPS*/
+      europe(FmSharedPreferences.REGIONAL_BAND_NETHERLANDS, EU_LOWER, EU_UPPER);
+      /*NEW ZEALAND : 88000 TO 107000 IN 100 KHZ STEPS*/
+      europe(FmSharedPreferences.REGIONAL_BAND_NEWZEALAND, 88000, 107000);
+      /*NORWAY : 87500 TO 108000 IN 100 KHZ STEPS*/
+      europe(FmSharedPreferences.REGIONAL_BAND_NORWAY, EU_LOWER, EU_UPPER);
+      /*POLAND : 88000 TO 108000 IN 50 KHZ STEPS*/
+      europe50(FmSharedPreferences.REGIONAL_BAND_POLAND, 88000);
+      /*PORTUGAL : 87500 TO 108000 IN 50 KHZ STEPS*/
+      europe50(FmSharedPreferences.REGIONAL_BAND_PORTUGAL, EU_LOWER);
+      /*RUSSIA : 87500 TO 108000 IN 100 KHZ STEPS*/
+      europe(FmSharedPreferences.REGIONAL_BAND_RUSSIA, EU_LOWER, EU_UPPER);
+      /*SINGAPORE : 88000 TO 108000 IN 100 KHZ STEPS*/
+      europe(FmSharedPreferences.REGIONAL_BAND_SINGAPORE, 88000, EU_UPPER);
+      /*SLOVAKIA : 87500 TO 108000 IN 100 KHZ STEPS*/
+      europe(FmSharedPreferences.REGIONAL_BAND_SLOVAKIA, EU_LOWER, EU_UPPER);
+      /*SPAIN : 87500 TO 108000 IN 100 KHZ STEPS*/
+      europe(FmSharedPreferences.REGIONAL_BAND_SPAIN, EU_LOWER, EU_UPPER);
+      /*SWITZERLAND : 87500 TO 108000 IN 100 KHZ STEPS*/
+      europe(FmSharedPreferences.REGIONAL_BAND_SWITZERLAND, EU_LOWER, EU_UPPER);
+      /*SWEDEN : 87500 TO 108000 IN 100 KHZ STEPS*/
+      europe(FmSharedPreferences.REGIONAL_BAND_SWEDEN, EU_LOWER, EU_UPPER);
+      /*TAIWAN : 87500 TO 108000 IN 100 KHZ STEPS*/
+      europe(FmSharedPreferences.REGIONAL_BAND_TAIWAN, EU_LOWER, EU_UPPER);
+      /*TURKEY : 87500 TO 108000 IN 100 KHZ STEPS*/
+      europe(FmSharedPreferences.REGIONAL_BAND_TURKEY, EU_LOWER, EU_UPPER);
+      /*UNITED KINGDOM : 87500 TO 108000 IN 100 KHZ STEPS*/
+      europe(FmSharedPreferences.REGIONAL_BAND_UNITEDKINGDOM, EU_LOWER, EU_UPPER);
+      /*UNITED STATES : 88100 TO 107900 IN 200 KHZ STEPS*/
+      define(FmSharedPreferences.REGIONAL_BAND_UNITED_STATES,
+             FmReceiver.FM_US_BAND, FmReceiver.FM_CHSPACE_200_KHZ,
+             FmReceiver.FM_DE_EMP75, FmReceiver.FM_RDS_STD_RBDS, 88100, 107900, 200);
+   }
+
+   private final int mCountry;
+   private final int mRadioBand;
+   private final int mChSpacing;
+   private final int mEmphasis;
+   private final int mRdsStd;
+   private final int mLowerLimit;
+   private final int mUpperLimit;
+   private final int mStepSize;
+   private final int[] mChannels;
+
+   private BandPlan(int country, int band, int spacing, int emphasis,
+                    int rdsStd, int lower, int upper, int step, int[] channels) {
+      mCountry = country;
+      mRadioBand = band;
+      mChSpacing = spacing;
+      mEmphasis = emphasis;
+      mRdsStd = rdsStd;
+      mLowerLimit = lower;
+      mUpperLimit = upper;
+      mStepSize = step;
+      mChannels = (channels != null) ? channels
+                                     : buildChannels(lower, upper, step);
+   }
+
+   private static void europe(int country, int lower, int upper) {
+      define(country, EU_BAND, EU_SPACING, EU_EMPHASIS, EU_RDS,
+             lower, upper, 100);
+   }
+
+   private static void europe50(int country, int lower) {
+      define(country, FmReceiver.FM_EU_BAND, FmReceiver.FM_CHSPACE_50_KHZ,
+             EU_EMPHASIS, EU_RDS, lower, EU_UPPER, 50);
+   }
+
+   private static void define(int country, int band, int spacing,
+                              int emphasis, int rdsStd,
+                              int lower, int upper, int step) {
+      PLANS[country] = new BandPlan(country, band, spacing, emphasis, rdsStd,
+                                    lower, upper, step,
+                                    findChannels(lower, upper, step));
+   }
+
+   /* Channel table of an already defined plan with the same grid */
+   private static int[] findChannels(int lower, int upper, int step) {
+      if (DEFAULT.sameGrid(lower, upper, step)) {
+         return DEFAULT.mChannels;
+      }
+      for (BandPlan plan : PLANS) {
+         if ((plan != null) && plan.sameGrid(lower, upper, step)) {
+            return plan.mChannels;
+         }
+      }
+      return null;
+   }
+
+   private static int[] buildChannels(int lower, int upper, int step) {
+      int count = (step > 0) ? ((upper - lower) / step) + 1 : 0;
+      int[] channels = new int[Math.max(count, 0)];
+      for (int i = 0; i < channels.length; i++) {
+         channels[i] = lower + (i * step);
+      }
+      return channels;
+   }
+
+   /* @return the plan for a REGIONAL_BAND_* code, null if unknown */
+   public static BandPlan get(int country) {
+      if ((country < 0) || (country >= PLANS.length)) {
+         return null;
+      }
+      return PLANS[country];
+   }
+
+   /* Plan for a configuration edited away from its regional plan, e.g. a
+    * user defined band from Settings.
+    */
+   public static BandPlan fromConfig(int country, FmConfig config, int step) {
+      int lower = config.getLowerLimit();
+      int upper = config.getUpperLimit();
+      return new BandPlan(country, config.getRadioBand(), config.getChSpacing(),
+                          config.getEmphasis(), config.getRdsStd(),
+                          lower, upper, step, findChannels(lower, upper, step));
+   }
+
+   /* Copies the plan into a receiver configuration */
+   public void applyTo(FmConfig config) {
+      config.setRadioBand(mRadioBand);
+      config.setChSpacing(mChSpacing);
+      config.setEmphasis(mEmphasis);
+      config.setRdsStd(mRdsStd);
+      config.setLowerLimit(mLowerLimit);
+      config.setUpperLimit(mUpperLimit);
+   }
+
+   /* true if config is still tuned over this plan's channel grid */
+   public boolean matches(FmConfig config, int step) {
+      return (config.getRadioBand() == mRadioBand)
+             && (config.getChSpacing() == mChSpacing)
+             && (config.getEmphasis() == mEmphasis)
+             && (config.getRdsStd() == mRdsStd)
+             && sameGrid(config.getLowerLimit(), config.getUpperLimit(), step);
+   }
+
+   private boolean sameGrid(int lower, int upper, int step) {
+      return (mLowerLimit == lower) && (mUpperLimit == upper)
+             && (mStepSize == step);
+   }
+
+   public int getCountry() {
+      return mCountry;
+   }
+
+   public int getRadioBand() {
+      return mRadioBand;
+   }
+
+   public int getChSpacing() {
+      return mChSpacing;
+   }
+
+   public int getEmphasis() {
+      return mEmphasis;
+   }
+
+   public int getRdsStd() {
+      return mRdsStd;
+   }
+
+   public int getLowerLimit() {
+      return mLowerLimit;
+   }
+
+   public int getUpperLimit() {
+      return mUpperLimit;
+   }
+
+   public int getStepSize() {
+      return mStepSize;
+   }
+
+   public int getChannelCount() {
+      return mChannels.length;
+   }
+
+   public int getChannelFrequency(int index) {
+      return mChannels[index];
+   }
+
+   /* @return index of frequency in the channel table, -1 if off the grid */
+   public int getChannelIndex(int frequency) {
+      int index = Arrays.binarySearch(mChannels, frequency);
+      return (index >= 0) ? index : -1;
+   }
+
+   /* @return a copy of the channel table */
+   public int[] getChannels() {
+      return mChannels.clone();
+   }
+}
@@ -74,6 +74,7 @@ import android.text.TextUtils;
 import java.io.File;
 import java.io.IOException;
 import java.lang.ref.WeakReference;
+import java.util.Arrays;
 import java.util.Formatter;
 import java.util.HashMap;
 import java.util.List;
@@ -151,7 +152,15 @@ public class FMRadio extends Activity
     * is received with int this duration, a timeout msg will be displayed.
     */
    private static final int CMD_TIMEOUT_DELAY_MS = 5000;
+   /* A seek may sweep the whole band before it completes */
+   private static final int SEEK_TIMEOUT_DELAY_MS = 30000;
    private static final int MSG_CMD_TIMEOUT = 101;
+   /* Signal indicator updates pushed by the service */
+   private static final int SIGNAL_UPDATE_RATE_HZ = 1;
+   private static final int SIGNAL_UPDATE_THRESHOLD = 2;
+   private static final int[] SIGNAL_LEVEL_RSSI = { -100, -90, -80, -70 };
+   /* Between onResume and onPause, the signal stream only runs then */
+   private boolean mResumed = false;
 
    private static final int CMD_NONE = 0;
    private static final int CMD_TUNE = 1;
@@ -222,6 +231,13 @@ public class FMRadio extends Activity
    private static boolean mIsSeeking = false;
    private static boolean mIsSearching = false;
    private static int mScanPty = 0;
+   /* Auto-presets were filled from the station map, a search refreshes them */
+   private static boolean mRefreshingSearchList = false;
+   /* A user command took the tuner over, the refresh result is dropped */
+   private static boolean mRefreshCancelled = false;
+   private static int[] mCachedSearchList = null;
+   /* Owned by this activity, its I/O thread stops in onDestroy() */
+   private StationMapCache mStationMap = null;
 
    private Animation mAnimation = null;
    private ScrollerText mRadioTextScroller = null;
@@ -240,6 +256,22 @@ public class FMRadio extends Activity
    /* Command that failed (Sycnhronous or Asynchronous) */
    private static int mCommandFailed = 0;
 
+   /* Latest tune target received while a tune was in flight, -1 if none.
+    * Only touched on the UI thread.
+    */
+   private int mPendingTuneFrequency = -1;
+   /* Most recent frequency handed to tuneRadio, -1 once it is reached */
+   private int mTuneTargetFrequency = -1;
+   /* Start of the current run of back to back tunes, 0 when idle */
+   private long mTuneBurstStartMs = 0;
+   /* Tunes replaced by a newer target in the current run */
+   private int mTunesElidedInBurst = 0;
+   private long mTunesElidedTotal = 0;
+   private long mLastTuneLatencyMs = 0;
+   /* Service request IDs of the tune/seek in flight, -1 if none */
+   private int mTuneRequestId = -1;
+   private int mSeekRequestId = -1;
+
    private LoadedDataAndState SavedDataAndState = null;
 
    /** Called when the activity is first created. */
@@ -248,6 +280,7 @@ public class FMRadio extends Activity
       super.onCreate(savedInstanceState);
       setVolumeControlStream(AudioManager.STREAM_FM);
       mPrefs = new FmSharedPreferences(this);
+      mStationMap = new StationMapCache(getApplicationContext());
       mCommandActive = CMD_NONE;
       mCommandFailed = CMD_NONE;
 
@@ -409,6 +442,11 @@ public class FMRadio extends Activity
             }
           }
       }
+      mStationMap.save();
+      /* The quiet period of Save() must not outlive the process, the
+       * writer thread commits it now
+       */
+      mPrefs.FlushAsync();
       super.onStop();
    }
 
@@ -421,6 +459,7 @@ public class FMRadio extends Activity
          if(mService != null)
          {
             mService.registerCallbacks(mServiceCallbacks);
+            mService.enableSnapshotCallbacks(true);
          }
       }
       catch (RemoteException e)
@@ -458,7 +497,11 @@ public class FMRadio extends Activity
    protected void onPause() {
       Log.d(LOGTAG, "FMRadio: onPause");
       super.onPause();
-      mRadioTextScroller.stopScroll();
+      /* Also covers screen off, no ticks until onResume */
+      mRadioTextScroller.setVisible(false);
+      /* Before the next activity registers its own callbacks */
+      mResumed = false;
+      updateSignalSubscription();
       FmSharedPreferences.setTunedFrequency(mTunedStation.getFrequency());
       mPrefs.Save();
    }
@@ -473,6 +516,9 @@ public class FMRadio extends Activity
       {
          mTunedStation.Copy(station);
       }
+      mRadioTextScroller.setVisible(true);
+      mResumed = true;
+      updateSignalSubscription();
       mHandler.post(mUpdateProgramService);
       mHandler.post(mUpdateRadioText);
       mHandler.post(mOnStereo);
@@ -515,6 +561,7 @@ public class FMRadio extends Activity
       unbindFromService(this);
       mService = null;
       Log.d(LOGTAG, "onDestroy: unbindFromService completed");
+      mStationMap.quit();
       super.onDestroy();
    }
 
@@ -1768,7 +1815,7 @@ public class FMRadio extends Activity
    private View.OnClickListener mForwardClickListener
    = new View.OnClickListener() {
       public void onClick(View v) {
-         int frequency = FmSharedPreferences.getNextTuneFrequency();
+         int frequency = FmSharedPreferences.getNextTuneFrequency(getTuneBaseFrequency());
          Log.d(LOGTAG, "Tune Up: to " + frequency);
          tuneRadio(frequency);
       }
@@ -1777,7 +1824,7 @@ public class FMRadio extends Activity
    private View.OnClickListener mBackClickListener
    = new View.OnClickListener() {
       public void onClick(View v) {
-         int frequency = FmSharedPreferences.getPrevTuneFrequency();
+         int frequency = FmSharedPreferences.getPrevTuneFrequency(getTuneBaseFrequency());
          Log.d(LOGTAG, "Tune Down: to " + frequency);
          tuneRadio(frequency);
       }
@@ -2487,6 +2534,25 @@ public class FMRadio extends Activity
       return(mIsSearching);
    }
 
+   /* Cancels a background refresh of the search list so a user command
+    * gets the tuner, its result is then dropped
+    */
+   private void stopSearchListRefresh() {
+      if(mRefreshingSearchList && (mService != null))
+      {
+         mRefreshingSearchList = false;
+         mRefreshCancelled = true;
+         mCachedSearchList = null;
+         try
+         {
+            mService.cancelSearch();
+         } catch (RemoteException e)
+         {
+            e.printStackTrace();
+         }
+      }
+   }
+
    public static PresetStation getCurrentTunedStation() {
       return mTunedStation;
    }
@@ -2499,7 +2565,9 @@ public class FMRadio extends Activity
          {
             if(!isSeekActive())
             {
-               mIsSeeking = mService.seek(false);
+               stopSearchListRefresh();
+               mSeekRequestId = mService.seekAsync(false, SEEK_TIMEOUT_DELAY_MS);
+               mIsSeeking = (mSeekRequestId > 0);
                if(mIsSeeking == false)
                {
                   mCommandFailed = CMD_SEEK;
@@ -2524,7 +2592,9 @@ public class FMRadio extends Activity
          {
             if(!isSeekActive())
             {
-               mIsSeeking = mService.seek(true);
+               stopSearchListRefresh();
+               mSeekRequestId = mService.seekAsync(true, SEEK_TIMEOUT_DELAY_MS);
+               mIsSeeking = (mSeekRequestId > 0);
                if(mIsSeeking == false)
                {
                   mCommandFailed = CMD_SEEK;
@@ -2549,6 +2619,7 @@ public class FMRadio extends Activity
          {
             try
             {
+               stopSearchListRefresh();
                mIsScaning = mService.scan(pty);
                if(mIsScaning == false)
                {
@@ -2578,6 +2649,7 @@ public class FMRadio extends Activity
          {
             if(!isSeekActive())
             {
+               stopSearchListRefresh();
                mIsSeeking = mService.seekPI(pi);
                if(mIsSeeking == false)
                {
@@ -2610,12 +2682,15 @@ public class FMRadio extends Activity
             {
                if( (mIsScaning == true)
                   || (mIsSeeking == true)
-                  || (mIsSearching == true))
+                  || (mIsSearching == true)
+                  || (mRefreshingSearchList == true))
                {
                   mService.cancelSearch();
                   mIsScaning = false;
                   mIsSeeking = false;
                   mIsSearching=false;
+                  mRefreshCancelled = mRefreshingSearchList;
+                  mRefreshingSearchList = false;
                }
             } catch (RemoteException e)
             {
@@ -2631,16 +2706,44 @@ public class FMRadio extends Activity
       synchronized (this)
       {
          mIsSearching = false;
+         mRefreshingSearchList = false;
+         mRefreshCancelled = false;
          if(mService != null)
          {
+            /* A recent search of this band fills the presets right away,
+             * the search below then only refreshes them in the background
+             */
+            int country = FmSharedPreferences.getCountry();
+            int spacing = FmSharedPreferences.getChSpacing();
+            int[] cached = mStationMap.getStrongStations(country, spacing,
+                                                         NUM_AUTO_PRESETS_SEARCH);
+            if (cached != null)
+            {
+               Log.d(LOGTAG, "initiateSearchList: " + cached.length + " cached stations");
+               fillPresetsFromSearch(cached);
+               if (mStationMap.isSearchFresh(country, spacing))
+               {
+                  setupPresetLayout();
+                  return;
+               }
+               mCachedSearchList = getPresetFrequencies();
+            }
             try
             {
-               mIsSearching = mService.searchStrongStationList(NUM_AUTO_PRESETS_SEARCH);
-               if(mIsSearching == false)
+               boolean searching = mService.searchStrongStationList(NUM_AUTO_PRESETS_SEARCH);
+               if (cached != null)
                {
-                  mCommandFailed = CMD_SEARCHLIST;
-                  Log.e(LOGTAG, " mService.searchStrongStationList failed");
-                  showDialog(DIALOG_CMD_FAILED);
+                  mRefreshingSearchList = searching;
+               }
+               else
+               {
+                  mIsSearching = searching;
+                  if(mIsSearching == false)
+                  {
+                     mCommandFailed = CMD_SEARCHLIST;
+                     Log.e(LOGTAG, " mService.searchStrongStationList failed");
+                     showDialog(DIALOG_CMD_FAILED);
+                  }
                }
             } catch (RemoteException e)
             {
@@ -2651,6 +2754,57 @@ public class FMRadio extends Activity
       }
    }
 
+   /* Replaces the current preset list with the stations of a strong station
+    * search, strongest first, with the PI and PTY last seen on each of them.
+    */
+   private void fillPresetsFromSearch(int[] searchList) {
+      int currentList = FmSharedPreferences.getCurrentListIndex();
+      PresetList curList =
+           FmSharedPreferences.getStationList(currentList);
+      if (curList != null) {
+         curList.clear();
+      }
+      mPresetPageNumber = 0;
+      int country = FmSharedPreferences.getCountry();
+      int spacing = FmSharedPreferences.getChSpacing();
+
+      for( int station=0;
+           (station < searchList.length) && (station < NUM_AUTO_PRESETS_SEARCH);
+           station++)
+      {
+         int frequency = searchList[station];
+         Log.d(LOGTAG, "fillPresetsFromSearch: [" + station + "] = " +  frequency);
+         if( (frequency <= FmSharedPreferences.getUpperLimit())
+            && (frequency >= FmSharedPreferences.getLowerLimit()))
+         {
+            PresetStation preset = new PresetStation("", frequency);
+            int pi = mStationMap.getPI(country, spacing, frequency);
+            if (pi != 0) {
+               preset.setPI(pi);
+               preset.setPty(mStationMap.getPty(country, spacing, frequency));
+            }
+            FmSharedPreferences.addStation(currentList, preset);
+         }
+
+         if(frequency == 0)
+         {
+            break;
+         }
+      }
+      mPrefs.Save();
+   }
+
+   private int[] getPresetFrequencies() {
+      PresetList curList =
+           FmSharedPreferences.getStationList(FmSharedPreferences.getCurrentListIndex());
+      int count = (curList == null) ? 0 : curList.getStationCount();
+      int[] freqs = new int[count];
+      for (int i = 0; i < count; i++) {
+         freqs[i] = curList.getStationFrequency(i);
+      }
+      return freqs;
+   }
+
    private static final int UPDATE_PROGRESS_DLG = 1;
    private static final int END_PROGRESS_DLG = 2;
    private static final int TIMEOUT_PROGRESS_DLG = 3;
@@ -2870,17 +3024,40 @@ public class FMRadio extends Activity
    }
 
    private void tuneRadio(int frequency){
+      stopSearchListRefresh();
+      /* While a tune is in flight only the latest target is kept, it is
+       * issued from mUpdateStationInfo once the tune status arrives.
+       */
+      if( (mService != null) &&
+          ((mCommandActive == CMD_TUNE) || (mPendingTuneFrequency != -1)) )
+      {
+         if(mPendingTuneFrequency != -1)
+         {
+            mTunesElidedInBurst++;
+         }
+         mPendingTuneFrequency = frequency;
+         mTuneTargetFrequency = frequency;
+         return;
+      }
       /* Issue the tune command only if tuneCommand is already not active */
       if( (mService != null) && (mCommandActive != CMD_TUNE) &&  isFmOn() )
       {
+         if(mTuneBurstStartMs == 0)
+         {
+            mTuneBurstStartMs = SystemClock.uptimeMillis();
+         }
+         mTuneTargetFrequency = frequency;
          boolean bStatus = false;
          try
          {
 
-            bStatus = mService.tune(frequency);
+            /* The service reports a timeout against this request ID */
+            int requestId = mService.tuneAsync(frequency, CMD_TIMEOUT_DELAY_MS);
+            bStatus = (requestId > 0);
             if(bStatus)
             {
-               postTimeoutHandler(CMD_TUNE);
+               mTuneRequestId = requestId;
+               setCommandActive(CMD_TUNE);
             }
             else
             {
@@ -2907,12 +3084,64 @@ public class FMRadio extends Activity
       }
    }
 
-   /* Start a Command timeout
-   */
-   private synchronized void postTimeoutHandler(int cmd){
+   /* Sends the tune held back while the previous one was in flight.
+    * @return true if a tune was issued.
+    */
+   private boolean issuePendingTune(){
+      int frequency = mPendingTuneFrequency;
+      if(frequency == -1)
+      {
+         return false;
+      }
+      mPendingTuneFrequency = -1;
+      tuneRadio(frequency);
+      return (mCommandActive == CMD_TUNE);
+   }
+
+   /* Forget the held back tune, the run of tunes ended without reaching it */
+   private void dropPendingTune(){
+      if(mPendingTuneFrequency != -1)
+      {
+         mTunesElidedTotal += mTunesElidedInBurst + 1;
+      }
+      mPendingTuneFrequency = -1;
+      mTuneTargetFrequency = -1;
+      mTunesElidedInBurst = 0;
+      mTuneBurstStartMs = 0;
+   }
 
+   /* Frequency the forward/back buttons step from, so repeated presses
+    * keep advancing while earlier tunes are still in flight.
+    */
+   private int getTuneBaseFrequency(){
+      if(mTuneTargetFrequency != -1)
+      {
+         return mTuneTargetFrequency;
+      }
+      return FmSharedPreferences.getTunedFrequency();
+   }
+
+   /* Called when the final target of a run of tunes is reached */
+   private void reportTuneComplete(){
+      if(mTuneBurstStartMs == 0)
+      {
+         return;
+      }
+      mLastTuneLatencyMs = SystemClock.uptimeMillis() - mTuneBurstStartMs;
+      mTunesElidedTotal += mTunesElidedInBurst;
+      Log.d(LOGTAG, "Tuned to " + FmSharedPreferences.getTunedFrequency()
+            + " in " + mLastTuneLatencyMs + "ms, elided " + mTunesElidedInBurst
+            + " (total " + mTunesElidedTotal + ")");
+      mTunesElidedInBurst = 0;
+      mTuneBurstStartMs = 0;
+      mTuneTargetFrequency = -1;
+   }
+
+   /* Mark an asynchronous command as active, its timeout comes from
+      the service through onCommandTimeout
+   */
+   private synchronized void setCommandActive(int cmd){
       mCommandActive = cmd;
-      mCommandTimeoutHandler.sendEmptyMessageDelayed (MSG_CMD_TIMEOUT, CMD_TIMEOUT_DELAY_MS);
    }
 
    /* Stop the Command timeout
@@ -2921,6 +3150,38 @@ public class FMRadio extends Activity
       mCommandActive = CMD_NONE;
       mCommandTimeoutHandler.removeMessages(MSG_CMD_TIMEOUT);
    }
+   /* A tune or seek finished, a late timeout must no longer match it */
+   private void handleCommandComplete(int requestId){
+      if(requestId == mTuneRequestId)
+      {
+         mTuneRequestId = -1;
+      }
+      else if(requestId == mSeekRequestId)
+      {
+         mSeekRequestId = -1;
+      }
+   }
+
+   /* A tune or seek the service gave up on */
+   private void handleCommandTimeout(int requestId){
+      if(!isFmOn())
+      {
+         /* Requests are aborted when the radio turns off */
+         return;
+      }
+      if(requestId == mTuneRequestId)
+      {
+         mTuneRequestId = -1;
+         mCommandTimeoutHandler.sendEmptyMessage(MSG_CMD_TIMEOUT);
+      }
+      else if(requestId == mSeekRequestId)
+      {
+         mSeekRequestId = -1;
+         mIsSeeking = false;
+         updateSearchProgress();
+      }
+   }
+
    /* Command timeout Handler
       Routine to handle the Command timeouts for FM operations
       that return asynchronous event callbacks
@@ -2936,6 +3197,7 @@ public class FMRadio extends Activity
                {
                   Log.d(LOGTAG, "mCommandTimeoutHandler: Cmd failed : "+mCommandActive);
                   mCommandTimeoutHandler.removeMessages(MSG_CMD_TIMEOUT);
+                  dropPendingTune();
                   showDialog(DIALOG_CMD_TIMEOUT);
                   return;
                }
@@ -2989,6 +3251,7 @@ public class FMRadio extends Activity
       public void run() {
          /* Update UI to FM Off State */
          cleanupTimeoutHandler();
+         dropPendingTune();
          endSleepTimer();
          stopRecording();
          cancelSearch();
@@ -3005,6 +3268,12 @@ public class FMRadio extends Activity
    final Runnable mUpdateStationInfo = new Runnable() {
       public void run() {
          cleanupTimeoutHandler();
+         /* Skip the intermediate station, go straight for the latest target */
+         if(issuePendingTune())
+         {
+            return;
+         }
+         reportTuneComplete();
          PresetStation station = FmSharedPreferences.getStationFromFrequency(FmSharedPreferences.getTunedFrequency());
          if (station != null)
          {
@@ -3031,43 +3300,34 @@ public class FMRadio extends Activity
    final Runnable mSearchListComplete = new Runnable() {
       public void run() {
          Log.d(LOGTAG, "mSearchListComplete: ");
+         boolean refreshing = mRefreshingSearchList;
+         boolean dropped = mRefreshCancelled;
+         int[] cachedPresets = mCachedSearchList;
          mIsSearching = false;
+         mRefreshingSearchList = false;
+         mRefreshCancelled = false;
+         mCachedSearchList = null;
 
          /* Now get the list*/
-         if(mService != null)
+         if((mService != null) && !dropped)
          {
             try
             {
                int[] searchList = mService.getSearchList();
                if (searchList != null)
                {
-                  /* Add the stations into the preset list */
-                  int currentList = FmSharedPreferences.getCurrentListIndex();
-                  PresetList curList =
-                       FmSharedPreferences.getStationList(currentList);
-                  if (curList != null) {
-                     curList.clear();
-                  }
-                  mPresetPageNumber = 0;
-
-                  for( int station=0;
-                       (station < searchList.length) && (station < NUM_AUTO_PRESETS_SEARCH);
-                       station++)
+                  mStationMap.putSearchResults(FmSharedPreferences.getCountry(),
+                                               FmSharedPreferences.getChSpacing(),
+                                               searchList);
+                  mStationMap.save();
+                  /* A background refresh must not undo user edits made
+                   * since the presets were filled from the cache
+                   */
+                  if (!refreshing
+                      || Arrays.equals(cachedPresets, getPresetFrequencies()))
                   {
-                     int frequency = searchList[station];
-                     Log.d(LOGTAG, "mSearchListComplete: [" + station + "] = " +  frequency);
-                     if( (frequency <= FmSharedPreferences.getUpperLimit())
-                        && (frequency >= FmSharedPreferences.getLowerLimit()))
-                     {
-                        FmSharedPreferences.addStation("", searchList[station],currentList);
-                     }
-
-                     if(frequency == 0)
-                     {
-                        break;
-                     }
+                     fillPresetsFromSearch(searchList);
                   }
-                  mPrefs.Save();
                }
             } catch (RemoteException e)
             {
@@ -3105,46 +3365,18 @@ public class FMRadio extends Activity
 
    final Runnable mUpdateRadioText = new Runnable() {
       public void run() {
-         String str = "";
-         if(mService != null && isFmOn())
+         if(mService != null)
          {
             try
             {
-               /* Get Radio Text and update the display */
-               str = mService.getRadioText();
-
-               /* Update only if all the characters are printable */
-               if (TextUtils.isPrintableAsciiOnly(str))
-               {
-                  Log.d(LOGTAG, "mUpdateRadioText: Updatable string: [" + str + "]");
-                  mRadioTextTV.setText(str);
-                  mRadioTextScroller.mOriginalString = str;
-               }
-               /* Rest the string to empty*/
-               else if (TextUtils.isEmpty(str))
-               {
-                  mRadioTextTV.setText("");
-                  mRadioTextScroller.mOriginalString = "";
-               } else
+               /* One transaction for RT, PTY, PI and the on state */
+               StationSnapshot snapshot = mService.getStationSnapshot();
+               if((snapshot != null) && snapshot.isFmOn())
                {
-                  //Log.d(LOGTAG, "mUpdateRadioText: Leaving old string " + mRadioTextTV.getText());
+                  showRadioText(snapshot.getRadioText());
+                  showStationIds(snapshot.getProgramType(),
+                                 snapshot.getProgramId());
                }
-
-               /* Get PTY and PI and update the display */
-               int tempInt =mService.getProgramType();
-               /* Save PTY */
-               mTunedStation.setPty(tempInt);
-               mProgramTypeTV.setText(PresetStation.parsePTY(tempInt));
-               tempInt =mService.getProgramID();
-               mStationCallSignTV.setText(PresetStation.parsePI(tempInt));
-               if(tempInt != 0)
-               {
-                  mTunedStation.setPI(tempInt);
-               }
-               /* For non-Empty, non-Printable string, just leave the
-                  existing old string
-               */
-               mRadioTextScroller.startScroll();
             } catch (RemoteException e)
             {
                e.printStackTrace();
@@ -3156,44 +3388,17 @@ public class FMRadio extends Activity
    /* Create runnable for posting */
    final Runnable mUpdateProgramService = new Runnable() {
       public void run() {
-         String str = "";
          if(mService != null)
          {
             try
             {
-               /* Get the Station PS and update the display */
-               str = mService.getProgramService();
-               /* Update only if all the characters are printable */
-               //if(isStringPrintable(str))
-               if (TextUtils.isPrintableAsciiOnly(str))
+               StationSnapshot snapshot = mService.getStationSnapshot();
+               if(snapshot != null)
                {
-                  Log.d(LOGTAG, "mUpdateProgramService: Updatable string: [" + str + "]");
-                  mProgramServiceTV.setText(str);
+                  showProgramService(snapshot.getProgramService());
+                  showStationIds(snapshot.getProgramType(),
+                                 snapshot.getProgramId());
                }
-               /* Rest the string to empty*/
-               else if (TextUtils.isEmpty(str))
-               {
-                  mProgramServiceTV.setText("");
-               } else
-               {
-                  /* For non-Empty, non-Printable string, just leave the
-                     existing old string
-                  */
-                  //Log.d(LOGTAG, "mUpdateProgramService: Leaving old string " + mProgramServiceTV.getText());
-               }
-               /* Get PTY and PI and update the display */
-               int tempInt =mService.getProgramType();
-               /* Save PTY */
-               mTunedStation.setPty(tempInt);
-
-               mProgramTypeTV.setText(PresetStation.parsePTY(tempInt));
-               tempInt =mService.getProgramID();
-               /* Save the program ID */
-               if(tempInt != 0)
-               {
-                  mTunedStation.setPI(tempInt);
-               }
-               mStationCallSignTV.setText(PresetStation.parsePI(tempInt));
             } catch (RemoteException e)
             {
                e.printStackTrace();
@@ -3202,6 +3407,108 @@ public class FMRadio extends Activity
       }
    };
 
+   /* Applies a snapshot pushed by the service, no binder calls needed */
+   private void showStationSnapshot(StationSnapshot snapshot) {
+      showProgramService(snapshot.getProgramService());
+      if(snapshot.isFmOn())
+      {
+         showRadioText(snapshot.getRadioText());
+      }
+      showStationIds(snapshot.getProgramType(), snapshot.getProgramId());
+      /* Channels passed by a search or seek are not what is playing */
+      if(snapshot.isFmOn() && !isScanActive() && !isSeekActive()
+         && !isSearchActive() && !mRefreshingSearchList)
+      {
+         mStationMap.updateChannel(FmSharedPreferences.getCountry(),
+                                   FmSharedPreferences.getChSpacing(),
+                                   snapshot.getFrequency(), snapshot.getRssi(),
+                                   snapshot.getProgramId(),
+                                   snapshot.getProgramType());
+      }
+   }
+
+   private void showRadioText(String str) {
+      /* Update only if all the characters are printable */
+      if (TextUtils.isPrintableAsciiOnly(str))
+      {
+         Log.d(LOGTAG, "mUpdateRadioText: Updatable string: [" + str + "]");
+         mRadioTextTV.setText(str);
+         mRadioTextScroller.mOriginalString = str;
+      }
+      /* Rest the string to empty*/
+      else if (TextUtils.isEmpty(str))
+      {
+         mRadioTextTV.setText("");
+         mRadioTextScroller.mOriginalString = "";
+      } else
+      {
+         /* For non-Empty, non-Printable string, just leave the
+            existing old string
+         */
+         //Log.d(LOGTAG, "mUpdateRadioText: Leaving old string " + mRadioTextTV.getText());
+      }
+      mRadioTextScroller.startScroll();
+   }
+
+   private void showProgramService(String str) {
+      /* Update only if all the characters are printable */
+      if (TextUtils.isPrintableAsciiOnly(str))
+      {
+         Log.d(LOGTAG, "mUpdateProgramService: Updatable string: [" + str + "]");
+         mProgramServiceTV.setText(str);
+      }
+      /* Rest the string to empty*/
+      else if (TextUtils.isEmpty(str))
+      {
+         mProgramServiceTV.setText("");
+      } else
+      {
+         /* For non-Empty, non-Printable string, just leave the
+            existing old string
+         */
+         //Log.d(LOGTAG, "mUpdateProgramService: Leaving old string " + mProgramServiceTV.getText());
+      }
+   }
+
+   private void showStationIds(int pty, int pi) {
+      /* Save PTY */
+      mTunedStation.setPty(pty);
+      mProgramTypeTV.setText(PresetStation.parsePTY(pty));
+      /* Save the program ID */
+      if(pi != 0)
+      {
+         mTunedStation.setPI(pi);
+      }
+      mStationCallSignTV.setText(PresetStation.parsePI(pi));
+   }
+
+   /* Level 0..4 of the signal indicator for an RSSI reading */
+   private void showSignalLevel(int rssi) {
+      int level = 0;
+      while ((level < SIGNAL_LEVEL_RSSI.length)
+             && (rssi >= SIGNAL_LEVEL_RSSI[level])) {
+         level++;
+      }
+      if (mRSSI != null) {
+         mRSSI.setImageLevel(level);
+      }
+   }
+
+   /* Streams the signal level only while the indicator can be seen */
+   private void updateSignalSubscription() {
+      if (mService == null) {
+         return;
+      }
+      boolean shown = mResumed && (mRSSI != null)
+                      && (mRSSI.getVisibility() == View.VISIBLE);
+      try {
+         mService.setSignalUpdateRate(shown ? SIGNAL_UPDATE_RATE_HZ : 0,
+                                      SIGNAL_UPDATE_THRESHOLD);
+      } catch (RemoteException e) {
+         e.printStackTrace();
+      }
+   }
+
    private void DebugToasts(String str, int duration) {
       //Toast.makeText(this, str, duration).show();
       Log.d(LOGTAG, "Debug:" + str);
@@ -3214,6 +3521,10 @@ public class FMRadio extends Activity
     * SCROLLER_UPDATE_DELAY_MS
     * When the entire text is scrolled, the scrolling will restart
     * after SCROLLER_RESTART_DELAY_MS
+    * The text is copied once into mChars and each tick shows a window of
+    * it through TextView.setText(char[], int, int), which wraps the
+    * buffer instead of creating a String. Nothing is scheduled while the
+    * activity is not visible.
     */
    private static final class ScrollerText extends Handler
    {
@@ -3233,6 +3544,8 @@ public class FMRadio extends Activity
       private final WeakReference<TextView> mView;
 
       private byte mStatus = SCROLLER_STOPPED;
+      private boolean mVisible = true;
+      private char[] mChars = new char[64];
       String mOriginalString;
       int    mStringlength=0;
       int    mIteration=0;
@@ -3281,7 +3594,6 @@ public class FMRadio extends Activity
          final TextView textView = mView.get();
          if (textView != null)
          {
-            String szStr2 = "";
             if (mStringlength > 0)
             {
                mIteration++;
@@ -3293,12 +3605,23 @@ public class FMRadio extends Activity
                {
                   sendEmptyMessageDelayed(SCROLLER_MSG_TICK, SCROLLER_UPDATE_DELAY_MS);
                }
-               //String szStr1 = mOriginalString.substring(0, mTick);
-               if ((mOriginalString !=null) && (mOriginalString.length() >= mIteration))
-                  szStr2 = mOriginalString.substring(mIteration);
+               textView.setText(mChars, mIteration, mStringlength - mIteration);
+            } else
+            {
+               textView.setText("");
             }
-            //textView.setText(szStr2+"     "+szStr1);
-            textView.setText(szStr2);
+         }
+      }
+
+      /**
+       * Pauses the scrolling while the activity is not visible,
+       * startScroll() does nothing until it is visible again.
+       */
+      void setVisible(boolean visible) {
+         mVisible = visible;
+         if (!visible)
+         {
+            stopScroll();
          }
       }
 
@@ -3331,11 +3654,26 @@ public class FMRadio extends Activity
        * Starts only if Length > 0
        */
       void startScroll() {
+         if (!mVisible)
+         {
+            return;
+         }
          final TextView textView = mView.get();
          if (textView != null)
          {
-            mOriginalString = (String) textView.getText();
+            /* The view may hold a scrolled window, mOriginalString is
+             * kept in step with every setText() of the full text
+             */
+            if (mOriginalString == null)
+            {
+               mOriginalString = textView.getText().toString();
+            }
             mStringlength = mOriginalString.length();
+            if (mStringlength > mChars.length)
+            {
+               mChars = new char[mStringlength];
+            }
+            mOriginalString.getChars(0, mStringlength, mChars, 0);
             if (mStringlength > 0)
             {
                mStatus = SCROLLER_STARTING;
@@ -3414,6 +3752,8 @@ public class FMRadio extends Activity
             try
             {
                mService.registerCallbacks(mServiceCallbacks);
+               mService.enableSnapshotCallbacks(true);
+               updateSignalSubscription();
                if(SavedDataAndState == null) {
                   enableRadio();
                } else if(SavedDataAndState.onOrOff){
@@ -3497,9 +3837,15 @@ public class FMRadio extends Activity
          Log.d(LOGTAG, "mServiceCallbacks.onAlternateFrequencyChanged :");
       }
 
-      public void onSignalStrengthChanged()
+      public void onSignalStrengthChanged(final int rssi, int sinr, int ioc,
+                                          int intDet, boolean stereo)
       {
-         Log.d(LOGTAG, "mServiceCallbacks.onSignalStrengthChanged :");
+         Log.d(LOGTAG, "mServiceCallbacks.onSignalStrengthChanged :" + rssi);
+         mHandler.post(new Runnable() {
+            public void run() {
+               showSignalLevel(rssi);
+            }
+         });
       }
 
       public void onSearchComplete()
@@ -3552,5 +3898,48 @@ public class FMRadio extends Activity
          Log.d(LOGTAG, "mServiceCallbacks.onRecordingStopped:");
          stopRecording();
       }
+
+      public void onCommandComplete(final int requestId, int frequency)
+      {
+         Log.d(LOGTAG, "mServiceCallbacks.onCommandComplete :" + requestId
+               + " frequency " + frequency);
+         mHandler.post(new Runnable() {
+            public void run() {
+               handleCommandComplete(requestId);
+            }
+         });
+      }
+
+      public void onCommandTimeout(final int requestId)
+      {
+         Log.d(LOGTAG, "mServiceCallbacks.onCommandTimeout :" + requestId);
+         mHandler.post(new Runnable() {
+            public void run() {
+               handleCommandTimeout(requestId);
+            }
+         });
+      }
+
+      public void onSweepResults(int[] records, int count, int completed,
+                                 int total)
+      {
+         Log.d(LOGTAG, "mServiceCallbacks.onSweepResults :" + completed);
+      }
+
+      public void onSweepComplete(int channels, long elapsedMs,
+                                  boolean cancelled)
+      {
+         Log.d(LOGTAG, "mServiceCallbacks.onSweepComplete :" + channels);
+      }
+
+      public void onStationSnapshotChanged(final StationSnapshot snapshot)
+      {
+         Log.d(LOGTAG, "mServiceCallbacks.onStationSnapshotChanged :");
+         mHandler.post(new Runnable() {
+            public void run() {
+               showStationSnapshot(snapshot);
+            }
+         });
+      }
    };
 }
@@ -75,6 +75,13 @@ import com.quicinc.utils.A2dpDeviceStatus;
 import android.media.AudioManager;
 import android.content.ComponentName;
 import android.os.StatFs;
+import android.os.SystemClock;
+import android.text.TextUtils;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Provides "background" FM Radio (that uses the hardware) capabilities,
@@ -90,7 +97,11 @@ public class FMRadioService extends Service
    private static final String FMRADIO_DEVICE_FD_STRING = "/dev/radio0";
    private static final String LOGTAG = "FMService";//FMRadio.LOGTAG;
 
-   private FmReceiver mReceiver;
+   private volatile FmReceiver mReceiver;
+   // Serializes all chip commands on one thread
+   private RadioCommandQueue mCommandQueue = null;
+   // Runs the request timeouts, on the command thread
+   private Handler mRequestHandler = null;
    private BroadcastReceiver mHeadsetReceiver = null;
    private BroadcastReceiver mSdcardUnmountReceiver = null;
    private BroadcastReceiver mMusicCommandListener = null;
@@ -108,7 +119,7 @@ public class FMRadioService extends Service
    private static String mAudioDevice="headset";
    MediaRecorder mRecorder = null;
    MediaRecorder mA2dp = null;
-   private boolean mFMOn = false;
+   private volatile boolean mFMOn = false;
    private boolean mFmRecordingOn = false;
    private boolean mSpeakerPhoneOn = false;
    private int mCallStatus = 0;
@@ -119,7 +130,58 @@ public class FMRadioService extends Service
    private boolean mA2dpDisconnected = false;
    //PhoneStateListener instances corresponding to each
 
-   private FmRxRdsData mFMRxRDSData=null;
+   private volatile FmRxRdsData mFMRxRDSData=null;
+   // Bumped on every retune under mRdsLock, a PS/RT read started for an
+   // older station is dropped instead of being published
+   private final Object mRdsLock = new Object();
+   private int mRdsGeneration = 0;
+   // RDS events arriving within this window are folded into one read
+   private static final int RDS_COALESCE_WINDOW_MS = 150;
+   private static final int RDS_PS_UPDATE = 1;
+   private static final int RDS_RT_UPDATE = 2;
+   private Handler mRdsHandler = null;
+   private volatile int mRdsCoalesceWindowMs = RDS_COALESCE_WINDOW_MS;
+   /* Indices into getRdsStats() */
+   public static final int RDS_STAT_RECEIVED = 0;
+   public static final int RDS_STAT_COALESCED = 1;
+   public static final int RDS_STAT_UNCHANGED = 2;
+   public static final int RDS_STAT_DELIVERED = 3;
+   private static final int RDS_STAT_COUNT = 4;
+   // Last PS/RT state handed to the client, only touched on the command thread
+   private String mPublishedPs = null;
+   private String mPublishedRt = null;
+   private int mPublishedPsPi = -1;
+   private int mPublishedPsPty = -1;
+   private int mPublishedRtPi = -1;
+   private int mPublishedRtPty = -1;
+   private final AtomicLong mRdsEventsReceived = new AtomicLong();
+   // Events folded into an already pending read by the coalescing window
+   private final AtomicLong mRdsEventsCoalesced = new AtomicLong();
+   // Reads whose PS/RT, PI and PTY matched what was last published
+   private final AtomicLong mRdsEventsUnchanged = new AtomicLong();
+   private final AtomicLong mRdsEventsDelivered = new AtomicLong();
+   // Last stereo status reported by the FM stack
+   private volatile boolean mStereo = false;
+   // Client wants RDS updates as onStationSnapshotChanged
+   private volatile boolean mSnapshotCallbacks = false;
+   // SINR is only reported by the SMD transport
+   private boolean mSinrSupported = false;
+   // fmOn() bring-up timing
+   private volatile long mBringUpStartMs = 0;
+   private volatile long mTimeToAudioMs = 0;
+   // Warm standby: after fmOff() the receiver stays enabled in low power
+   // mode for mStandbyMs, so a following fmOn() skips the chip bring-up
+   private static final int DEFAULT_STANDBY_MS = 30000;
+   private int mStandbyMs = DEFAULT_STANDBY_MS;
+   // mStandby and the receiver handle change under mStandbyLock, so the
+   // expiry never disables a receiver fmOn() is resuming
+   private final Object mStandbyLock = new Object();
+   private volatile boolean mStandby = false;
+   private int[] mStandbyConfig = null;
+   /* Binding action of FMTransmitterService, which only releases the
+    * standby receiver and does not count as a UI client
+    */
+   static final String ACTION_STANDBY_CONTROL = "com.quicinc.fmradio.STANDBY_CONTROL";
    // interval after which we stop the service when idle
    private static final int IDLE_DELAY = 60000;
    private File mA2DPSampleFile = null;
@@ -138,6 +200,14 @@ public class FMRadioService extends Service
    private boolean mNotchFilterSet = false;
    public static final int STOP_SERVICE = 0;
    public static final int STOP_RECORD = 1;
+   // Layout of one channel record in onSweepResults()
+   public static final int SWEEP_FIELD_FREQ = 0;
+   public static final int SWEEP_FIELD_RSSI = 1;
+   public static final int SWEEP_FIELD_IOC = 2;
+   public static final int SWEEP_FIELD_INTDET = 3;
+   public static final int SWEEP_FIELD_MPXDCC = 4;
+   public static final int SWEEP_FIELD_SINR = 5;
+   public static final int SWEEP_RECORD_SIZE = 6;
    // A2dp Device Status will be queried through this class
    A2dpDeviceStatus mA2dpDeviceState = null;
    private boolean mA2dpDeviceSupportInHal = false;
@@ -162,6 +232,12 @@ public class FMRadioService extends Service
 
       mPrefs = new FmSharedPreferences(this);
       mCallbacks = null;
+      mCommandQueue = new RadioCommandQueue("FmRadioCommands");
+      mRequestHandler = new Handler(mCommandQueue.getLooper());
+      mSinrSupported =
+         "smd".equals(SystemProperties.get("ro.qualcomm.bt.hci_transport"));
+      mStandbyMs = SystemProperties.getInt("ro.fm.standby_ms", DEFAULT_STANDBY_MS);
+      startRdsThread();
       TelephonyManager tmgr = (TelephonyManager) getSystemService(Context.TELEPHONY_SERVICE);
       tmgr.listen(mPhoneStateListener, PhoneStateListener.LISTEN_CALL_STATE |
                                        PhoneStateListener.LISTEN_DATA_ACTIVITY);
@@ -169,6 +245,8 @@ public class FMRadioService extends Service
       mWakeLock = pm.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, this.getClass().getName());
       mWakeLock.setReferenceCounted(false);
       misAnalogModeSupported  = SystemProperties.getBoolean("ro.fm.analogpath.supported",false);
+      setRdsCoalesceWindow(SystemProperties.getInt("ro.fm.rds.coalesce_ms",
+                                                   RDS_COALESCE_WINDOW_MS));
       /* Register for Screen On/off broadcast notifications */
       mA2dpDeviceState = new A2dpDeviceStatus(getApplicationContext());
       registerScreenOnOffListener();
@@ -206,6 +284,11 @@ public class FMRadioService extends Service
 
       // make sure there aren't any other messages coming
       mDelayedStopHandler.removeCallbacksAndMessages(null);
+      stopRdsThread();
+      Log.d(LOGTAG, "RDS events received: " + mRdsEventsReceived.get()
+                    + " coalesced: " + mRdsEventsCoalesced.get()
+                    + " unchanged: " + mRdsEventsUnchanged.get()
+                    + " delivered: " + mRdsEventsDelivered.get());
       //release the audio focus listener
       AudioManager audioManager = (AudioManager) getSystemService(Context.AUDIO_SERVICE);
       if (isMuted()) {
@@ -237,13 +320,19 @@ public class FMRadioService extends Service
       }
 
       /* Since the service is closing, disable the receiver */
-      fmOff();
+      fmOff(false);
 
       TelephonyManager tmgr = (TelephonyManager) getSystemService(Context.TELEPHONY_SERVICE);
       tmgr.listen(mPhoneStateListener, 0);
 
       Log.d(LOGTAG, "onDestroy: unbindFromService completed");
 
+      /* Do not lose a preference write still waiting for its quiet period */
+      mPrefs.Flush();
+      abortRequests();
+      mCommandQueue.logStats();
+      mCommandQueue.quit();
+
       //unregisterReceiver(mIntentReceiver);
       mWakeLock.release();
       super.onDestroy();
@@ -307,7 +396,7 @@ public class FMRadioService extends Service
                        if ((mHeadsetPlugged == false) && (mReceiver != null) &&
                            (mInternalAntennaAvailable == false) &&
                            (mOverA2DP == false)) {
-                          mReceiver.disable();
+                          disableReceiver(mReceiver);
                           mReceiver = null;
                           if(!isFmRecordingOn())
                              stop();
@@ -477,7 +566,7 @@ public class FMRadioService extends Service
                                 return;
                             }
                             if(isFmOn()){
-                                if((mReceiver != null) && mReceiver.disable()) {
+                                if((mReceiver != null) && disableReceiver(mReceiver)) {
                                    mReceiver = null;
                                 }
                                 fmOff();
@@ -555,6 +644,9 @@ public class FMRadioService extends Service
 
    @Override
    public IBinder onBind(Intent intent) {
+      if (ACTION_STANDBY_CONTROL.equals(intent.getAction())) {
+         return mBinder;
+      }
       mDelayedStopHandler.removeCallbacksAndMessages(null);
       mServiceInUse = true;
       /* Application/UI is attached, so get out of lower power mode */
@@ -588,6 +680,9 @@ public class FMRadioService extends Service
 
    @Override
    public boolean onUnbind(Intent intent) {
+      if (ACTION_STANDBY_CONTROL.equals(intent.getAction())) {
+         return false;
+      }
       mServiceInUse = false;
       Log.d(LOGTAG, "onUnbind");
 
@@ -1142,7 +1237,7 @@ public class FMRadioService extends Service
                    }
                    else
                    {
-                       mReceiver.setNotchFilter(true);
+                       setNotchFilter(true);
                        mNotchFilterSet = true;
                    }
                }
@@ -1165,7 +1260,7 @@ public class FMRadioService extends Service
               break;
           case RESET_NOTCH_FILTER:
               if (mReceiver != null) {
-                  mReceiver.setNotchFilter(false);
+                  setNotchFilter(false);
                   mNotchFilterSet = false;
               }
               break;
@@ -1322,7 +1417,13 @@ public class FMRadioService extends Service
       mInternalAntennaAvailable  = false;
       if (mReceiver != null)
       {
-         mInternalAntennaAvailable = mReceiver.getInternalAntenna();
+         mInternalAntennaAvailable = mCommandQueue.call(RadioCommandQueue.CMD_QUERY,
+                                                        new Callable<Boolean>() {
+            public Boolean call() {
+               FmReceiver receiver = mReceiver;
+               return (receiver != null) && receiver.getInternalAntenna();
+            }
+         }, false);
          Log.d(LOGTAG, "getInternalAntenna: " + mInternalAntennaAvailable);
       }
    }
@@ -1430,6 +1531,28 @@ public class FMRadioService extends Service
          return(mService.get().seek(up));
       }
 
+      public int tuneAsync(int frequency, int timeoutMs)
+      {
+         return(mService.get().tuneAsync(frequency, timeoutMs));
+      }
+
+      public int seekAsync(boolean up, int timeoutMs)
+      {
+         return(mService.get().seekAsync(up, timeoutMs));
+      }
+
+      public boolean startBandSweep(int lowerFreq, int upperFreq, int spacing,
+                                    int batchSize)
+      {
+         return(mService.get().startBandSweep(lowerFreq, upperFreq, spacing,
+                                               batchSize));
+      }
+
+      public void cancelBandSweep()
+      {
+         mService.get().cancelBandSweep();
+      }
+
       public void enableSpeaker(boolean speakerOn)
       {
           mService.get().enableSpeaker(speakerOn);
@@ -1540,6 +1663,34 @@ public class FMRadioService extends Service
       {
           return (mService.get().getSINR());
       }
+      public StationSnapshot getStationSnapshot()
+      {
+          return (mService.get().getStationSnapshot());
+      }
+      public void enableSnapshotCallbacks(boolean bEnable)
+      {
+          mService.get().enableSnapshotCallbacks(bEnable);
+      }
+
+      public void setSignalUpdateRate(int rateHz, int threshold)
+      {
+          mService.get().setSignalUpdateRate(rateHz, threshold);
+      }
+
+      public long[] getCommandStats(int command)
+      {
+          return (mService.get().getCommandStats(command));
+      }
+
+      public long[] getRdsStats()
+      {
+          return (mService.get().getRdsStats());
+      }
+
+      public void releaseStandbyReceiver()
+      {
+          mService.get().releaseStandbyReceiver();
+      }
 
    }
 
@@ -1562,7 +1713,14 @@ public class FMRadioService extends Service
                 return false;
         }
 
-        boolean state = mReceiver.setAnalogMode(analogMode);
+        final boolean mode = analogMode;
+        boolean state = mCommandQueue.call(RadioCommandQueue.CMD_SET_OPTION,
+                                           new Callable<Boolean>() {
+           public Boolean call() {
+              FmReceiver receiver = mReceiver;
+              return (receiver != null) && receiver.setAnalogMode(mode);
+           }
+        }, false);
         if (false == state) {
             Log.d(LOGTAG, "Error in toggling analog/digital path " + analogMode);
             return false;
@@ -1570,6 +1728,48 @@ public class FMRadioService extends Service
         misAnalogPathEnabled = analogMode;
         return true;
    }
+   /*
+    * Power, configuration and option calls go through mCommandQueue like
+    * every other FmReceiver command, so they cannot interleave with queued
+    * tunes, searches or RDS reads. Enabling may load firmware, so power
+    * calls are given longer than the default wait.
+    */
+   private static final int POWER_TIMEOUT_MS = 10000;
+
+   private boolean enableReceiver(final FmReceiver receiver, final FmConfig config) {
+      return mCommandQueue.call(RadioCommandQueue.CMD_POWER, new Callable<Boolean>() {
+         public Boolean call() {
+            return receiver.enable(config);
+         }
+      }, false, POWER_TIMEOUT_MS);
+   }
+
+   private boolean disableReceiver(final FmReceiver receiver) {
+      return mCommandQueue.call(RadioCommandQueue.CMD_POWER, new Callable<Boolean>() {
+         public Boolean call() {
+            return receiver.disable();
+         }
+      }, false, POWER_TIMEOUT_MS);
+   }
+
+   private boolean configureReceiver(final FmConfig config) {
+      return mCommandQueue.call(RadioCommandQueue.CMD_CONFIGURE, new Callable<Boolean>() {
+         public Boolean call() {
+            FmReceiver receiver = mReceiver;
+            return (receiver != null) && receiver.configure(config);
+         }
+      }, false);
+   }
+
+   private void setNotchFilter(final boolean enable) {
+      mCommandQueue.post(RadioCommandQueue.CMD_SET_OPTION, new Callable<Boolean>() {
+         public Boolean call() {
+            FmReceiver receiver = mReceiver;
+            return (receiver != null) && receiver.setNotchFilter(enable);
+         }
+      }, false);
+   }
+
   /*
    * Turn ON FM: Powers up FM hardware, and initializes the FM module
    *                                                                                 .
@@ -1581,6 +1781,30 @@ public class FMRadioService extends Service
       if ( TelephonyManager.CALL_STATE_IDLE != getCallState() ) {
          return bStatus;
       }
+      mBringUpStartMs = SystemClock.elapsedRealtime();
+      traceBringUp("start");
+
+      boolean warm = false;
+      FmConfig standbyConfig = null;
+      synchronized (mStandbyLock)
+      {
+         if (mStandby)
+         {
+            /* Enabled, configured and registered before fmOff() */
+            standbyConfig = resumeFromStandby();
+            warm = true;
+         }
+      }
+      if (standbyConfig != null)
+      {
+         /* Queued like any other chip command, outside mStandbyLock */
+         Log.d(LOGTAG, "fmOn: configuration changed in standby");
+         configureReceiver(standbyConfig);
+      }
+      if (warm)
+      {
+         traceBringUp("standbyResume");
+      }
 
       if(mReceiver == null)
       {
@@ -1591,6 +1815,7 @@ public class FMRadioService extends Service
          {
             throw new RuntimeException("FmReceiver service not available!");
          }
+         traceBringUp("receiver");
       }
 
       if (mReceiver != null)
@@ -1601,17 +1826,30 @@ public class FMRadioService extends Service
             bStatus = true;
             Log.d(LOGTAG, "mReceiver.already enabled");
          }
+         else if (warm)
+         {
+            if (isSpeakerEnabled()) {
+                setAudioPath(false);
+            } else {
+                setAudioPath(true);
+            }
+            bStatus = true;
+         }
          else
          {
             // This sets up the FM radio device
             FmConfig config = FmSharedPreferences.getFMConfiguration();
-            Log.d(LOGTAG, "fmOn: RadioBand   :"+ config.getRadioBand());
-            Log.d(LOGTAG, "fmOn: Emphasis    :"+ config.getEmphasis());
-            Log.d(LOGTAG, "fmOn: ChSpacing   :"+ config.getChSpacing());
-            Log.d(LOGTAG, "fmOn: RdsStd      :"+ config.getRdsStd());
-            Log.d(LOGTAG, "fmOn: LowerLimit  :"+ config.getLowerLimit());
-            Log.d(LOGTAG, "fmOn: UpperLimit  :"+ config.getUpperLimit());
-            bStatus = mReceiver.enable(FmSharedPreferences.getFMConfiguration());
+            Log.d(LOGTAG, "fmOn: band " + config.getRadioBand()
+                          + " emphasis " + config.getEmphasis()
+                          + " spacing " + config.getChSpacing()
+                          + " rdsStd " + config.getRdsStd()
+                          + " limits " + config.getLowerLimit()
+                          + "-" + config.getUpperLimit());
+            bStatus = enableReceiver(mReceiver, config);
+            traceBringUp("enable");
+            /* setAnalogMode() is a control of the enabled device, it
+             * cannot be issued before enable() has returned
+             */
             if (isSpeakerEnabled()) {
                 setAudioPath(false);
             } else {
@@ -1624,13 +1862,11 @@ public class FMRadioService extends Service
          {
             /* Put the hardware into normal mode */
             bStatus = setLowPowerMode(false);
-            Log.d(LOGTAG, "setLowPowerMode done, Status :" +  bStatus);
-
+            traceBringUp("normalPower");
 
             AudioManager audioManager = (AudioManager) getSystemService(Context.AUDIO_SERVICE);
             if( (audioManager != null) &&(false == mPlaybackInProgress) )
             {
-               Log.d(LOGTAG, "mAudioManager.setFmRadioOn = true \n" );
                //audioManager.setParameters("FMRadioOn="+mAudioDevice);
                int state =  getCallState();
                if ( TelephonyManager.CALL_STATE_IDLE != getCallState() )
@@ -1639,26 +1875,22 @@ public class FMRadioService extends Service
                } else {
                    startFM(); // enable FM Audio only when Call is IDLE
                }
-               Log.d(LOGTAG, "mAudioManager.setFmRadioOn done \n" );
-            }
-            if (mReceiver != null) {
-                bStatus = mReceiver.registerRdsGroupProcessing(FmReceiver.FM_RX_RDS_GRP_RT_EBL|
-                                                           FmReceiver.FM_RX_RDS_GRP_PS_EBL|
-                                                           FmReceiver.FM_RX_RDS_GRP_AF_EBL|
-                                                           FmReceiver.FM_RX_RDS_GRP_PS_SIMPLE_EBL);
-                Log.d(LOGTAG, "registerRdsGroupProcessing done, Status :" +  bStatus);
             }
-            bStatus = enableAutoAF(FmSharedPreferences.getAutoAFSwitch());
-            Log.d(LOGTAG, "enableAutoAF done, Status :" +  bStatus);
-
-            /* There is no internal Antenna*/
-            bStatus = mReceiver.setInternalAntenna(false);
-            Log.d(LOGTAG, "setInternalAntenna done, Status :" +  bStatus);
-
-            /* Read back to verify the internal Antenna mode*/
-            readInternalAntennaAvailable();
+            mTimeToAudioMs = SystemClock.elapsedRealtime() - mBringUpStartMs;
+            traceBringUp("audio");
 
             startNotification();
+            traceBringUp("notification");
+
+            /* Not needed for first audio, runs behind it on the command
+             * thread and before any command queued after fmOn(). A standby
+             * receiver still has its registrations.
+             */
+            if (!warm)
+            {
+               mRequestHandler.post(mDeferredBringUp);
+            }
+            restartSignalPoll();
             bStatus = true;
          }
          else
@@ -1673,6 +1905,42 @@ public class FMRadioService extends Service
       return(bStatus);
    }
 
+   /* Bring-up steps deferred until after first audio */
+   private final Runnable mDeferredBringUp = new Runnable() {
+      public void run() {
+         FmReceiver receiver = mReceiver;
+         if ((receiver == null) || !isFmOn()) {
+            return;
+         }
+         boolean bStatus = receiver.registerRdsGroupProcessing(FmReceiver.FM_RX_RDS_GRP_RT_EBL|
+                                                               FmReceiver.FM_RX_RDS_GRP_PS_EBL|
+                                                               FmReceiver.FM_RX_RDS_GRP_AF_EBL|
+                                                               FmReceiver.FM_RX_RDS_GRP_PS_SIMPLE_EBL);
+         Log.d(LOGTAG, "registerRdsGroupProcessing done, Status :" +  bStatus);
+         bStatus = enableAutoAF(FmSharedPreferences.getAutoAFSwitch());
+         Log.d(LOGTAG, "enableAutoAF done, Status :" +  bStatus);
+
+         /* There is no internal Antenna*/
+         bStatus = receiver.setInternalAntenna(false);
+         Log.d(LOGTAG, "setInternalAntenna done, Status :" +  bStatus);
+
+         /* Read back to verify the internal Antenna mode*/
+         readInternalAntennaAvailable();
+         traceBringUp("deferred");
+      }
+   };
+
+   /* Logs the time since fmOn() started for one bring-up stage */
+   private void traceBringUp(String stage) {
+      Log.d(LOGTAG, "fmOn: " + stage + " +"
+                    + (SystemClock.elapsedRealtime() - mBringUpStartMs) + "ms");
+   }
+
+   /* Time from fmOn() to FM audio being started by the last bring-up */
+   public long getTimeToAudioMs() {
+      return mTimeToAudioMs;
+   }
+
   /*
    * Turn OFF FM Operations: This disables all the current FM operations             .
    */
@@ -1739,20 +2007,127 @@ public class FMRadioService extends Service
    * @return true if fm Disable api was invoked successfully, false if the api failed.
    */
    private boolean fmOff() {
+      return fmOff(true);
+   }
+
+   /* boolean allowStandby: keep the receiver in warm standby rather than
+    * disabling it, if standby is configured.
+    */
+   private boolean fmOff(boolean allowStandby) {
       boolean bStatus=false;
 
       fmOperationsOff();
+      /* Commands still queued for this receiver are moot now */
+      mCommandQueue.clear();
+      abortRequests();
+      cancelBandSweep();
 
       // This will disable the FM radio device
       if (mReceiver != null)
       {
-         bStatus = mReceiver.disable();
-         mReceiver = null;
+         boolean standby = allowStandby && (mStandbyMs > 0) && !mStandby;
+         FmReceiver disabled = null;
+         if (standby)
+         {
+            /* Queued on the command thread, so not under mStandbyLock */
+            setLowPowerMode(true);
+         }
+         synchronized (mStandbyLock)
+         {
+            if (standby)
+            {
+               bStatus = enterStandby();
+            }
+            else if (mReceiver != null)
+            {
+               mRequestHandler.removeCallbacks(mStandbyExpired);
+               mStandby = false;
+               disabled = mReceiver;
+               mReceiver = null;
+            }
+         }
+         /* Outside mStandbyLock, the command thread may be waiting on it */
+         if (disabled != null)
+         {
+            bStatus = disableReceiver(disabled);
+         }
       }
       stop();
       return(bStatus);
    }
 
+   private boolean enterStandby() {
+      mStandby = true;
+      mStandbyConfig = getConfigKey(FmSharedPreferences.getFMConfiguration());
+      mRequestHandler.removeCallbacks(mStandbyExpired);
+      mRequestHandler.postDelayed(mStandbyExpired, mStandbyMs);
+      Log.d(LOGTAG, "fmOff: receiver in standby for " + mStandbyMs + "ms");
+      return true;
+   }
+
+   private final Runnable mStandbyExpired = new Runnable() {
+      public void run() {
+         leaveStandby();
+      }
+   };
+
+   /* Standby grace period is over: really disable the receiver */
+   private void leaveStandby() {
+      FmReceiver receiver;
+      synchronized (mStandbyLock) {
+         if (!mStandby) {
+            return;
+         }
+         mStandby = false;
+         mStandbyConfig = null;
+         Log.d(LOGTAG, "standby ended, disabling receiver");
+         receiver = mReceiver;
+         mReceiver = null;
+      }
+      if (receiver != null)
+      {
+         disableReceiver(receiver);
+      }
+   }
+
+   /* Called by FMTransmitterService through the binder before it opens
+    * the device, which a standby receiver still holds
+    */
+   public void releaseStandbyReceiver() {
+      mRequestHandler.removeCallbacks(mStandbyExpired);
+      leaveStandby();
+   }
+
+   /* Takes a standby receiver back, called with mStandbyLock held.
+    * @return the configuration to reapply, null if it did not change
+    *         while FM was off.
+    */
+   private FmConfig resumeFromStandby() {
+      mRequestHandler.removeCallbacks(mStandbyExpired);
+      mStandby = false;
+      FmConfig config = FmSharedPreferences.getFMConfiguration();
+      boolean changed = !Arrays.equals(mStandbyConfig, getConfigKey(config));
+      mStandbyConfig = null;
+      return changed ? config : null;
+   }
+
+   private static int[] getConfigKey(FmConfig config) {
+      return new int[] { config.getRadioBand(), config.getEmphasis(),
+                         config.getChSpacing(), config.getRdsStd(),
+                         config.getLowerLimit(), config.getUpperLimit() };
+   }
+
+   /* Sets how long the receiver stays in warm standby after fmOff(),
+    * 0 disables it on every fmOff().
+    */
+   public void setStandbyPeriod(int ms) {
+      mStandbyMs = Math.max(ms, 0);
+      if ((mStandbyMs == 0) && mStandby) {
+         mRequestHandler.removeCallbacks(mStandbyExpired);
+         mRequestHandler.post(mStandbyExpired);
+      }
+   }
+
   /*
    * Turn OFF FM: Disable the FM Host when hardware resets asynchronously            .
    *                                                                                 .
@@ -1764,13 +2139,29 @@ public class FMRadioService extends Service
       Log.v(LOGTAG, "fmRadioReset");
 
       fmOperationsReset();
+      mCommandQueue.clear();
+      abortRequests();
+      cancelBandSweep();
 
       // This will reset the FM radio receiver
-      if (mReceiver != null)
+      FmReceiver receiver;
+      synchronized (mStandbyLock)
       {
-         bStatus = mReceiver.reset();
+         mRequestHandler.removeCallbacks(mStandbyExpired);
+         mStandby = false;
+         receiver = mReceiver;
          mReceiver = null;
       }
+      if (receiver != null)
+      {
+         final FmReceiver target = receiver;
+         bStatus = mCommandQueue.call(RadioCommandQueue.CMD_POWER,
+                                      new Callable<Boolean>() {
+            public Boolean call() {
+               return target.reset();
+            }
+         }, false, POWER_TIMEOUT_MS);
+      }
       stop();
       return(bStatus);
    }
@@ -1876,7 +2267,7 @@ public class FMRadioService extends Service
          Log.d(LOGTAG, "RdsStd      :"+ config.getRdsStd());
          Log.d(LOGTAG, "LowerLimit  :"+ config.getLowerLimit());
          Log.d(LOGTAG, "UpperLimit  :"+ config.getUpperLimit());
-         bStatus = mReceiver.configure(config);
+         bStatus = configureReceiver(config);
       }
       return(bStatus);
    }
@@ -1886,6 +2277,8 @@ public class FMRadioService extends Service
     */
    public void registerCallbacks(IFMRadioServiceCallbacks cb)
    {
+      mSnapshotCallbacks = false;
+      setSignalUpdateRate(0, 0);
       mCallbacks = cb;
    }
 
@@ -1894,9 +2287,21 @@ public class FMRadioService extends Service
     */
    public void unregisterCallbacks()
    {
+      mSnapshotCallbacks = false;
+      setSignalUpdateRate(0, 0);
       mCallbacks=null;
    }
 
+   /*
+    * When enabled, PS/RT changes are delivered to the registered callbacks
+    * as onStationSnapshotChanged() carrying the full station state, in
+    * place of onProgramServiceChanged()/onRadioTextChanged().
+    */
+   public void enableSnapshotCallbacks(boolean bEnable)
+   {
+      mSnapshotCallbacks = bEnable;
+   }
+
    /*
    *  Route Audio to headset or speaker phone
    *  @return true if routeAudio call succeeded, false if the route call failed.
@@ -1994,16 +2399,54 @@ public class FMRadioService extends Service
     *        is complete
     */
    public boolean tune(int frequency) {
-      boolean bCommandSent=false;
+      return (submitTune(frequency, 0, false) != INVALID_REQUEST);
+   }
+
+   /* Tunes to the specified frequency and reports back with a request ID.
+    *
+    * int timeoutMs: time allowed for the tune, 0 for the default.
+    * @return request ID, or -1 if the tune could not be sent.
+    *  Note: onCommandComplete(id, frequency) is called when the tune is done,
+    *        onCommandTimeout(id) if it does not complete within timeoutMs.
+    *        A tune overtaken by a newer one before reaching the chip
+    *        completes together with the newer one.
+    */
+   public int tuneAsync(int frequency, int timeoutMs) {
+      return submitTune(frequency, timeoutMs, true);
+   }
+
+   private int submitTune(final int frequency, int timeoutMs, boolean notify) {
       double doubleFrequency = frequency/1000.00;
 
       Log.d(LOGTAG, "tuneRadio:  " + doubleFrequency);
-      if (mReceiver != null)
+      /* A standby receiver is still open but FM is off. A band sweep owns
+       * the tuner until it completes or is cancelled.
+       */
+      if ((mReceiver == null) || !isFmOn() || mSweepRunning)
+      {
+         return INVALID_REQUEST;
+      }
+      final CommandRequest request = addRequest(REQUEST_TUNE, frequency, timeoutMs,
+                                                notify);
+      /* Only the latest pending tune is sent to the chip */
+      boolean bCommandSent = mCommandQueue.post(RadioCommandQueue.CMD_TUNE,
+                                                new Callable<Boolean>() {
+         public Boolean call() {
+            FmReceiver receiver = mReceiver;
+            if (rejectDuringSweep(request)
+                || (receiver == null) || !markIssued(request)) {
+               return false;
+            }
+            receiver.setStation(frequency);
+            return true;
+         }
+      }, true);
+      if (!bCommandSent)
       {
-         mReceiver.setStation(frequency);
-         bCommandSent = true;
+         dropRequest(request);
+         return INVALID_REQUEST;
       }
-      return bCommandSent;
+      return request.mId;
    }
 
    /* Seeks (Search for strong station) to the station in the direction specified
@@ -2018,26 +2461,49 @@ public class FMRadioService extends Service
     */
    public boolean seek(boolean up)
    {
-      boolean bCommandSent=false;
-      if (mReceiver != null)
-      {
-         if (up == true)
-         {
-            Log.d(LOGTAG, "seek:  Up");
-            mReceiver.searchStations(FmReceiver.FM_RX_SRCH_MODE_SEEK,
-                                             FmReceiver.FM_RX_DWELL_PERIOD_1S,
-                                             FmReceiver.FM_RX_SEARCHDIR_UP);
-         }
-         else
-         {
-            Log.d(LOGTAG, "seek:  Down");
-            mReceiver.searchStations(FmReceiver.FM_RX_SRCH_MODE_SEEK,
-                                             FmReceiver.FM_RX_DWELL_PERIOD_1S,
-                                             FmReceiver.FM_RX_SEARCHDIR_DOWN);
+      return (submitSeek(up, 0, false) != INVALID_REQUEST);
+   }
+
+   /* Seeks like seek(), reporting back with a request ID.
+    *
+    * int timeoutMs: time allowed for the seek, 0 for the default.
+    * @return request ID, or -1 if the seek could not be sent.
+    *  Note: onCommandComplete(id, frequency) is called when the search
+    *        completes, onCommandTimeout(id) if it does not within timeoutMs.
+    */
+   public int seekAsync(boolean up, int timeoutMs)
+   {
+      return submitSeek(up, timeoutMs, true);
+   }
+
+   private int submitSeek(final boolean up, int timeoutMs, boolean notify)
+   {
+      if ((mReceiver == null) || !isFmOn() || mSweepRunning)
+      {
+         return INVALID_REQUEST;
+      }
+      Log.d(LOGTAG, "seek:  " + (up ? "Up" : "Down"));
+      final CommandRequest request = addRequest(REQUEST_SEEK, 0, timeoutMs, notify);
+      boolean bCommandSent = mCommandQueue.post(RadioCommandQueue.CMD_SEEK,
+                                                new Callable<Boolean>() {
+         public Boolean call() {
+            FmReceiver receiver = mReceiver;
+            if (rejectDuringSweep(request)
+                || (receiver == null) || !markIssued(request)) {
+               return false;
+            }
+            return receiver.searchStations(FmReceiver.FM_RX_SRCH_MODE_SEEK,
+                                           FmReceiver.FM_RX_DWELL_PERIOD_1S,
+                                           up ? FmReceiver.FM_RX_SEARCHDIR_UP
+                                              : FmReceiver.FM_RX_SEARCHDIR_DOWN);
          }
-         bCommandSent = true;
+      }, false);
+      if (!bCommandSent)
+      {
+         dropRequest(request);
+         return INVALID_REQUEST;
       }
-      return bCommandSent;
+      return request.mId;
    }
 
    /* Scan (Search for station with a "preview" of "n" seconds)
@@ -2055,28 +2521,44 @@ public class FMRadioService extends Service
     *        at the end of the Search or if the seach was cancelled.
     *
     */
-   public boolean scan(int pty)
+   public boolean scan(final int pty)
    {
       boolean bCommandSent=false;
-      if (mReceiver != null)
+      if ((mReceiver != null) && isFmOn() && !mSweepRunning)
       {
          Log.d(LOGTAG, "scan:  PTY: " + pty);
+         bCommandSent = mCommandQueue.call(RadioCommandQueue.CMD_SCAN,
+                                           new Callable<Boolean>() {
+            public Boolean call() {
+               return scanOnCommandThread(pty);
+            }
+         }, false);
+      }
+      return bCommandSent;
+   }
+
+   private boolean scanOnCommandThread(int pty)
+   {
+      boolean bCommandSent=false;
+      FmReceiver receiver = mReceiver;
+      if (receiver != null)
+      {
          if(FmSharedPreferences.isRBDSStd())
          {
             /* RBDS : Validate PTY value?? */
             if( ((pty  > 0) && (pty  <= 23)) || ((pty  >= 29) && (pty  <= 31)) )
             {
-               bCommandSent = mReceiver.searchStations(FmReceiver.FM_RX_SRCHRDS_MODE_SCAN_PTY,
-                                                       FmReceiver.FM_RX_DWELL_PERIOD_2S,
-                                                       FmReceiver.FM_RX_SEARCHDIR_UP,
-                                                       pty,
-                                                       0);
+               bCommandSent = receiver.searchStations(FmReceiver.FM_RX_SRCHRDS_MODE_SCAN_PTY,
+                                                      FmReceiver.FM_RX_DWELL_PERIOD_2S,
+                                                      FmReceiver.FM_RX_SEARCHDIR_UP,
+                                                      pty,
+                                                      0);
             }
             else
             {
-               bCommandSent = mReceiver.searchStations(FmReceiver.FM_RX_SRCH_MODE_SCAN,
-                                                FmReceiver.FM_RX_DWELL_PERIOD_2S,
-                                                FmReceiver.FM_RX_SEARCHDIR_UP);
+               bCommandSent = receiver.searchStations(FmReceiver.FM_RX_SRCH_MODE_SCAN,
+                                                      FmReceiver.FM_RX_DWELL_PERIOD_2S,
+                                                      FmReceiver.FM_RX_SEARCHDIR_UP);
             }
          }
          else
@@ -2084,17 +2566,17 @@ public class FMRadioService extends Service
             /* RDS : Validate PTY value?? */
             if( (pty  > 0) && (pty  <= 31) )
             {
-               bCommandSent = mReceiver.searchStations(FmReceiver.FM_RX_SRCHRDS_MODE_SCAN_PTY,
-                                                          FmReceiver.FM_RX_DWELL_PERIOD_2S,
-                                                          FmReceiver.FM_RX_SEARCHDIR_UP,
-                                                          pty,
-                                                          0);
+               bCommandSent = receiver.searchStations(FmReceiver.FM_RX_SRCHRDS_MODE_SCAN_PTY,
+                                                      FmReceiver.FM_RX_DWELL_PERIOD_2S,
+                                                      FmReceiver.FM_RX_SEARCHDIR_UP,
+                                                      pty,
+                                                      0);
             }
             else
             {
-               bCommandSent = mReceiver.searchStations(FmReceiver.FM_RX_SRCH_MODE_SCAN,
-                                                FmReceiver.FM_RX_DWELL_PERIOD_2S,
-                                                FmReceiver.FM_RX_SEARCHDIR_UP);
+               bCommandSent = receiver.searchStations(FmReceiver.FM_RX_SRCH_MODE_SCAN,
+                                                      FmReceiver.FM_RX_DWELL_PERIOD_2S,
+                                                      FmReceiver.FM_RX_SEARCHDIR_UP);
             }
          }
       }
@@ -2112,16 +2594,23 @@ public class FMRadioService extends Service
     *        2. Callback FmRxEvRadioTuneStatus will also be called when tuned to
     *        the previously tuned station.
     */
-   public boolean searchStrongStationList(int numStations)
+   public boolean searchStrongStationList(final int numStations)
    {
       boolean bCommandSent=false;
-      if (mReceiver != null)
+      if ((mReceiver != null) && isFmOn() && !mSweepRunning)
       {
          Log.d(LOGTAG, "searchStrongStationList:  numStations: " + numStations);
-         bCommandSent = mReceiver.searchStationList(FmReceiver.FM_RX_SRCHLIST_MODE_STRONG,
+         bCommandSent = mCommandQueue.call(RadioCommandQueue.CMD_SEARCH_LIST,
+                                           new Callable<Boolean>() {
+            public Boolean call() {
+               FmReceiver receiver = mReceiver;
+               return (receiver != null)
+                      && receiver.searchStationList(FmReceiver.FM_RX_SRCHLIST_MODE_STRONG,
                                                     FmReceiver.FM_RX_SEARCHDIR_UP,
                                                     numStations,
                                                     0);
+            }
+         }, false);
       }
       return bCommandSent;
    }
@@ -2136,18 +2625,25 @@ public class FMRadioService extends Service
     *        2. Callback FmRxEvRadioTuneStatus will also be called when tuned to a station
     *        at the end of the Search or if the seach was cancelled.
     */
-   public boolean seekPI(int piCode)
+   public boolean seekPI(final int piCode)
    {
       boolean bCommandSent=false;
-      if (mReceiver != null)
+      if ((mReceiver != null) && isFmOn() && !mSweepRunning)
       {
          Log.d(LOGTAG, "seekPI:  piCode: " + piCode);
-         bCommandSent = mReceiver.searchStations(FmReceiver.FM_RX_SRCHRDS_MODE_SEEK_PI,
-                                                            FmReceiver.FM_RX_DWELL_PERIOD_1S,
-                                                            FmReceiver.FM_RX_SEARCHDIR_UP,
-                                                            0,
-                                                            piCode
-                                                            );
+         bCommandSent = mCommandQueue.call(RadioCommandQueue.CMD_SEEK_PI,
+                                           new Callable<Boolean>() {
+            public Boolean call() {
+               FmReceiver receiver = mReceiver;
+               return (receiver != null)
+                      && receiver.searchStations(FmReceiver.FM_RX_SRCHRDS_MODE_SEEK_PI,
+                                                 FmReceiver.FM_RX_DWELL_PERIOD_1S,
+                                                 FmReceiver.FM_RX_SEARCHDIR_UP,
+                                                 0,
+                                                 piCode
+                                                 );
+            }
+         }, false);
       }
       return bCommandSent;
    }
@@ -2167,7 +2663,13 @@ public class FMRadioService extends Service
       if (mReceiver != null)
       {
          Log.d(LOGTAG, "cancelSearch");
-         bCommandSent = mReceiver.cancelSearch();
+         bCommandSent = mCommandQueue.call(RadioCommandQueue.CMD_CANCEL_SEARCH,
+                                           new Callable<Boolean>() {
+            public Boolean call() {
+               FmReceiver receiver = mReceiver;
+               return (receiver != null) && receiver.cancelSearch();
+            }
+         }, false);
       }
       return bCommandSent;
    }
@@ -2256,6 +2758,37 @@ public class FMRadioService extends Service
       return pi;
    }
 
+   /* Retrieves the tuned station state in one call.
+    *
+    * @return StationSnapshot with frequency, PS, RT, PTY, PI, stereo,
+    *         RSSI and mute state.
+    *  Note: RDS fields follow the same caching rules as getProgramService(),
+    *        RSSI is only read from the receiver while FM is on.
+    */
+   public StationSnapshot getStationSnapshot() {
+      FmRxRdsData data = mFMRxRDSData;
+      String ps = "";
+      String rt = "";
+      int pty = -1;
+      int pi = -1;
+      if (data != null)
+      {
+         ps = data.getPrgmServices();
+         rt = data.getRadioText();
+         pty = data.getPrgmType();
+         pi = data.getPrgmId();
+      }
+      int rssi = 0;
+      boolean fmOn = isFmOn();
+      if (fmOn && (mReceiver != null))
+      {
+         rssi = getRssi();
+      }
+      return new StationSnapshot(FmSharedPreferences.getTunedFrequency(),
+                                 ps, rt, pty, pi, mStereo, rssi,
+                                 isMuted(), fmOn);
+   }
+
 
    /* Retrieves the station list from the SearchStationlist.
     *
@@ -2269,7 +2802,13 @@ public class FMRadioService extends Service
       if (mReceiver != null)
       {
          Log.d(LOGTAG, "getSearchList: ");
-         frequencyList = mReceiver.getStationList();
+         frequencyList = mCommandQueue.call(RadioCommandQueue.CMD_QUERY,
+                                            new Callable<int[]>() {
+            public int[] call() {
+               FmReceiver receiver = mReceiver;
+               return (receiver != null) ? receiver.getStationList() : null;
+            }
+         }, null);
       }
       return frequencyList;
    }
@@ -2287,14 +2826,15 @@ public class FMRadioService extends Service
       if (mReceiver != null)
       {
          Log.d(LOGTAG, "setLowPowerMode: " + bLowPower);
-         if(bLowPower)
-         {
-            bCommandSent = mReceiver.setPowerMode(FmReceiver.FM_RX_LOW_POWER_MODE);
-         }
-         else
-         {
-            bCommandSent = mReceiver.setPowerMode(FmReceiver.FM_RX_NORMAL_POWER_MODE);
-         }
+         final int mode = bLowPower ? FmReceiver.FM_RX_LOW_POWER_MODE
+                                    : FmReceiver.FM_RX_NORMAL_POWER_MODE;
+         bCommandSent = mCommandQueue.call(RadioCommandQueue.CMD_POWER_MODE,
+                                           new Callable<Boolean>() {
+            public Boolean call() {
+               FmReceiver receiver = mReceiver;
+               return (receiver != null) && receiver.setPowerMode(mode);
+            }
+         }, false);
       }
       return bCommandSent;
    }
@@ -2308,7 +2848,13 @@ public class FMRadioService extends Service
       int powerMode=FmReceiver.FM_RX_NORMAL_POWER_MODE;
       if (mReceiver != null)
       {
-         powerMode = mReceiver.getPowerMode();
+         powerMode = mCommandQueue.call(RadioCommandQueue.CMD_QUERY,
+                                        new Callable<Integer>() {
+            public Integer call() {
+               FmReceiver receiver = mReceiver;
+               return (receiver != null) ? receiver.getPowerMode() : null;
+            }
+         }, FmReceiver.FM_RX_NORMAL_POWER_MODE);
          Log.d(LOGTAG, "getLowPowerMode: " + powerMode);
       }
       return powerMode;
@@ -2325,13 +2871,19 @@ public class FMRadioService extends Service
    *  Note: Callback FmRxEvRadioTuneStatus will be called when tune
    *        is complete to a different frequency.
    */
-   public boolean enableAutoAF(boolean bEnable)
+   public boolean enableAutoAF(final boolean bEnable)
    {
       boolean bCommandSent=false;
       if (mReceiver != null)
       {
          Log.d(LOGTAG, "enableAutoAF: " + bEnable);
-         bCommandSent = mReceiver.enableAFjump(bEnable);
+         bCommandSent = mCommandQueue.call(RadioCommandQueue.CMD_SET_OPTION,
+                                           new Callable<Boolean>() {
+            public Boolean call() {
+               FmReceiver receiver = mReceiver;
+               return (receiver != null) && receiver.enableAFjump(bEnable);
+            }
+         }, false);
       }
       return bCommandSent;
    }
@@ -2345,13 +2897,19 @@ public class FMRadioService extends Service
     *
     * @return true if set Stereo mode api was invoked successfully, false if the api failed.
     */
-   public boolean enableStereo(boolean bEnable)
+   public boolean enableStereo(final boolean bEnable)
    {
       boolean bCommandSent=false;
       if (mReceiver != null)
       {
          Log.d(LOGTAG, "enableStereo: " + bEnable);
-         bCommandSent = mReceiver.setStereoMode(bEnable);
+         bCommandSent = mCommandQueue.call(RadioCommandQueue.CMD_SET_OPTION,
+                                           new Callable<Boolean>() {
+            public Boolean call() {
+               FmReceiver receiver = mReceiver;
+               return (receiver != null) && receiver.setStereoMode(bEnable);
+            }
+         }, false);
       }
       return bCommandSent;
    }
@@ -2511,6 +3069,13 @@ public class FMRadioService extends Service
       public void FmRxEvRadioTuneStatus(int frequency)
       {
          Log.d(LOGTAG, "FmRxEvRadioTuneStatus: Tuned Frequency: " +frequency);
+         if (mSweepRunning)
+         {
+            /* Sweep channels are sampled in-process, clients only get batches */
+            onSweepTuneStatus(frequency);
+            return;
+         }
+         completeRequests(REQUEST_TUNE, frequency);
          try
          {
             FmSharedPreferences.setTunedFrequency(frequency);
@@ -2520,7 +3085,7 @@ public class FMRadioService extends Service
             if(mReceiver != null) {
                clearStationInfo();
             }
-            mFMRxRDSData = null;
+            resetRdsState();
             if(mCallbacks != null)
             {
                mCallbacks.onTuneStatusChanged();
@@ -2559,6 +3124,7 @@ public class FMRadioService extends Service
       public void FmRxEvStereoStatus(boolean stereo)
       {
          Log.d(LOGTAG, "FmRxEvStereoStatus: " + stereo);
+         mStereo = stereo;
          try
          {
             if(mCallbacks != null)
@@ -2600,12 +3166,13 @@ public class FMRadioService extends Service
       public void FmRxEvSearchComplete(int frequency)
        {
          Log.d(LOGTAG, "FmRxEvSearchComplete: Tuned Frequency: " +frequency);
+         completeRequests(REQUEST_SEEK, frequency);
          try
          {
             FmSharedPreferences.setTunedFrequency(frequency);
             //Log.d(LOGTAG, "Call mCallbacks.onSearchComplete");
             /* Since the Tuned Status changed, clear out the RDSData cached */
-            mFMRxRDSData = null;
+            resetRdsState();
             if(mCallbacks != null)
             {
                mCallbacks.onSearchComplete();
@@ -2649,53 +3216,11 @@ public class FMRadioService extends Service
       }
 
       public void FmRxEvRdsPsInfo() {
-         Log.d(LOGTAG, "FmRxEvRdsPsInfo: ");
-         try
-         {
-            if(mReceiver != null)
-            {
-               mFMRxRDSData = mReceiver.getPSInfo();
-               if(mFMRxRDSData != null)
-               {
-                  Log.d(LOGTAG, "PI: [" + mFMRxRDSData.getPrgmId() + "]");
-                  Log.d(LOGTAG, "PTY: [" + mFMRxRDSData.getPrgmType() + "]");
-                  Log.d(LOGTAG, "PS: [" + mFMRxRDSData.getPrgmServices() + "]");
-               }
-               if(mCallbacks != null)
-               {
-                  mCallbacks.onProgramServiceChanged();
-               }
-            }
-         } catch (RemoteException e)
-         {
-            e.printStackTrace();
-         }
+         scheduleRdsUpdate(RDS_PS_UPDATE);
       }
 
       public void FmRxEvRdsRtInfo() {
-         Log.d(LOGTAG, "FmRxEvRdsRtInfo");
-         try
-         {
-            //Log.d(LOGTAG, "Call mCallbacks.onRadioTextChanged");
-            if(mReceiver != null)
-            {
-               mFMRxRDSData = mReceiver.getRTInfo();
-               if(mFMRxRDSData != null)
-               {
-                  Log.d(LOGTAG, "PI: [" + mFMRxRDSData.getPrgmId() + "]");
-                  Log.d(LOGTAG, "PTY: [" + mFMRxRDSData.getPrgmType() + "]");
-                  Log.d(LOGTAG, "RT: [" + mFMRxRDSData.getRadioText() + "]");
-               }
-               if(mCallbacks != null)
-               {
-                  mCallbacks.onRadioTextChanged();
-               }
-            }
-         } catch (RemoteException e)
-         {
-            e.printStackTrace();
-         }
-
+         scheduleRdsUpdate(RDS_RT_UPDATE);
       }
 
       public void FmRxEvRdsAfInfo()
@@ -2721,6 +3246,640 @@ public class FMRadioService extends Service
    };
 
 
+   /*
+    * Tune/seek requests waiting for their completion event, oldest first.
+    * The chip reports completions in command order, so each
+    * FmRxEvRadioTuneStatus/FmRxEvSearchComplete is matched against the
+    * head of this queue. A tune status only completes a tune that was sent
+    * for that frequency, the end of a seek or scan reports one as well.
+    */
+   private static final int INVALID_REQUEST = -1;
+   private static final int REQUEST_TUNE = 0;
+   private static final int REQUEST_SEEK = 1;
+   private static final int DEFAULT_TUNE_TIMEOUT_MS = 5000;
+   private static final int DEFAULT_SEEK_TIMEOUT_MS = 30000;
+
+   private final ArrayDeque<CommandRequest> mPendingRequests =
+      new ArrayDeque<CommandRequest>();
+   private int mNextRequestId = 1;
+
+   private final class CommandRequest implements Runnable {
+      final int mId;
+      final int mType;
+      /* Target of a tune, 0 for a seek */
+      final int mFrequency;
+      final boolean mNotify;
+      final long mStartMs = SystemClock.uptimeMillis();
+      /* Sent to the chip, guarded by mPendingRequests */
+      boolean mIssued = false;
+      /* Replaced in the command queue by a newer tune before being sent */
+      boolean mSuperseded = false;
+
+      CommandRequest(int id, int type, int frequency, boolean notify) {
+         mId = id;
+         mType = type;
+         mFrequency = frequency;
+         mNotify = notify;
+      }
+
+      /* Timeout */
+      public void run() {
+         boolean timedOut;
+         synchronized (mPendingRequests) {
+            timedOut = mPendingRequests.remove(this);
+         }
+         if (timedOut) {
+            Log.d(LOGTAG, "request " + mId + " timed out");
+            notifyTimeout(this);
+         }
+      }
+   }
+
+   private CommandRequest addRequest(int type, int frequency, int timeoutMs,
+                                     boolean notify) {
+      CommandRequest request;
+      synchronized (mPendingRequests) {
+         if (type == REQUEST_TUNE) {
+            /* The command queue only keeps the newest pending tune */
+            for (CommandRequest pending : mPendingRequests) {
+               if ((pending.mType == REQUEST_TUNE) && !pending.mIssued) {
+                  pending.mSuperseded = true;
+               }
+            }
+         }
+         int id = mNextRequestId++;
+         if (mNextRequestId <= 0) {
+            mNextRequestId = 1;
+         }
+         request = new CommandRequest(id, type, frequency, notify);
+         mPendingRequests.add(request);
+      }
+      if (timeoutMs <= 0) {
+         timeoutMs = (type == REQUEST_TUNE) ? DEFAULT_TUNE_TIMEOUT_MS
+                                            : DEFAULT_SEEK_TIMEOUT_MS;
+      }
+      mRequestHandler.postDelayed(request, timeoutMs);
+      return request;
+   }
+
+   private void dropRequest(CommandRequest request) {
+      synchronized (mPendingRequests) {
+         mPendingRequests.remove(request);
+      }
+      mRequestHandler.removeCallbacks(request);
+   }
+
+   /* Called on the command thread: a sweep that started after the request
+    * was accepted fails it at once rather than letting it time out
+    */
+   private boolean rejectDuringSweep(CommandRequest request) {
+      if (!mSweepRunning) {
+         return false;
+      }
+      Log.d(LOGTAG, "request " + request.mId + " rejected, sweep running");
+      dropRequest(request);
+      notifyTimeout(request);
+      return true;
+   }
+
+   /* Called on the command thread just before the command reaches the chip */
+   private boolean markIssued(CommandRequest request) {
+      synchronized (mPendingRequests) {
+         if (request.mSuperseded || !mPendingRequests.contains(request)) {
+            return false;
+         }
+         request.mIssued = true;
+         return true;
+      }
+   }
+
+   private void completeRequests(int type, int frequency) {
+      ArrayList<CommandRequest> done = null;
+      /* The chip tunes to its own grid, half a step is the same channel */
+      int tolerance = FmSharedPreferences.getBandPlan().getStepSize() / 2;
+      synchronized (mPendingRequests) {
+         /* The first request that is not superseded must own the event,
+          * the superseded tunes ahead of it finish along with it
+          */
+         int count = 0;
+         boolean matched = false;
+         for (CommandRequest pending : mPendingRequests) {
+            count++;
+            if (pending.mType != type) {
+               break;
+            }
+            if (pending.mSuperseded) {
+               continue;
+            }
+            /* Still queued, this event belongs to something else. A tune
+             * status away from the tune target is e.g. the end of a scan.
+             */
+            matched = pending.mIssued
+                      && ((type != REQUEST_TUNE)
+                          || (Math.abs(frequency - pending.mFrequency) <= tolerance));
+            break;
+         }
+         if (matched) {
+            done = new ArrayList<CommandRequest>(count);
+            for (int i = 0; i < count; i++) {
+               done.add(mPendingRequests.poll());
+            }
+         }
+      }
+      if (done == null) {
+         return;
+      }
+      long now = SystemClock.uptimeMillis();
+      for (CommandRequest request : done) {
+         mRequestHandler.removeCallbacks(request);
+         Log.d(LOGTAG, "request " + request.mId + " completed in "
+                       + (now - request.mStartMs) + "ms");
+         if (request.mNotify && (mCallbacks != null)) {
+            try {
+               mCallbacks.onCommandComplete(request.mId, frequency);
+            } catch (RemoteException e) {
+               e.printStackTrace();
+            }
+         }
+      }
+   }
+
+   /* Fails every outstanding request, the receiver went away */
+   private void abortRequests() {
+      ArrayList<CommandRequest> aborted;
+      synchronized (mPendingRequests) {
+         aborted = new ArrayList<CommandRequest>(mPendingRequests);
+         mPendingRequests.clear();
+      }
+      for (CommandRequest request : aborted) {
+         mRequestHandler.removeCallbacks(request);
+         notifyTimeout(request);
+      }
+   }
+
+   private void notifyTimeout(CommandRequest request) {
+      if (request.mNotify && (mCallbacks != null)) {
+         try {
+            mCallbacks.onCommandTimeout(request.mId);
+         } catch (RemoteException e) {
+            e.printStackTrace();
+         }
+      }
+   }
+
+   /*
+    * Signal quality stream: while a client has asked for it, the command
+    * thread reads RSSI, SINR, IoC and IntDet at the requested rate and sends
+    * onSignalStrengthChanged() only when a metric moved by at least the
+    * threshold since the last update, or the stereo status flipped.
+    */
+   private static final int MAX_SIGNAL_RATE_HZ = 20;
+
+   private volatile int mSignalPeriodMs = 0;
+   private volatile int mSignalThreshold = 0;
+   // Last published values, only touched on the command thread
+   private boolean mSignalPublished = false;
+   private int mSignalRssi;
+   private int mSignalSinr;
+   private int mSignalIoC;
+   private int mSignalIntDet;
+   private boolean mSignalStereo;
+
+   private final Runnable mSignalPoll = new Runnable() {
+      public void run() {
+         int periodMs = mSignalPeriodMs;
+         /* Parked while FM is off or a sweep owns the tuner, fmOn() and
+          * finishSweep() restart it
+          */
+         if ((periodMs <= 0) || !isFmOn() || mSweepRunning) {
+            return;
+         }
+         mRequestHandler.postDelayed(this, periodMs);
+         publishSignal();
+      }
+   };
+
+   private void restartSignalPoll() {
+      mRequestHandler.removeCallbacks(mSignalPoll);
+      if (mSignalPeriodMs > 0) {
+         mRequestHandler.post(mSignalPoll);
+      }
+   }
+
+   /* Requests onSignalStrengthChanged() updates.
+    *
+    * int rateHz: maximum updates per second, 0 stops the updates.
+    * int threshold: minimum change of any metric to report, 0 reports
+    *                every change.
+    */
+   public void setSignalUpdateRate(int rateHz, int threshold) {
+      rateHz = Math.min(rateHz, MAX_SIGNAL_RATE_HZ);
+      mSignalPeriodMs = (rateHz > 0) ? (1000 / rateHz) : 0;
+      mSignalThreshold = Math.max(threshold, 0);
+      Log.d(LOGTAG, "setSignalUpdateRate: " + rateHz + "Hz, threshold "
+                    + mSignalThreshold);
+      mRequestHandler.post(new Runnable() {
+         public void run() {
+            /* The next update is always sent */
+            mSignalPublished = false;
+         }
+      });
+      restartSignalPoll();
+   }
+
+   private void publishSignal() {
+      FmReceiver receiver = mReceiver;
+      if ((receiver == null) || !isFmOn() || mSweepRunning
+          || (mCallbacks == null)) {
+         return;
+      }
+      int rssi = (byte) receiver.getRssi();
+      int sinr = mSinrSupported ? (byte) receiver.getSINR() : 0;
+      int ioc = receiver.getIoverc();
+      int intDet = receiver.getIntDet();
+      boolean stereo = mStereo;
+      int threshold = Math.max(mSignalThreshold, 1);
+      if (mSignalPublished && (stereo == mSignalStereo)
+          && (Math.abs(rssi - mSignalRssi) < threshold)
+          && (Math.abs(sinr - mSignalSinr) < threshold)
+          && (Math.abs(ioc - mSignalIoC) < threshold)
+          && (Math.abs(intDet - mSignalIntDet) < threshold)) {
+         return;
+      }
+      mSignalPublished = true;
+      mSignalRssi = rssi;
+      mSignalSinr = sinr;
+      mSignalIoC = ioc;
+      mSignalIntDet = intDet;
+      mSignalStereo = stereo;
+      try {
+         mCallbacks.onSignalStrengthChanged(rssi, sinr, ioc, intDet, stereo);
+      } catch (RemoteException e) {
+         e.printStackTrace();
+      }
+   }
+
+   /*
+    * Band sweep engine: walks the band on the command thread, samples the
+    * signal metrics in-process as soon as each tune status arrives, issues
+    * the next tune straight away and streams the records to the client in
+    * batches through onSweepResults().
+    */
+   private static final int SWEEP_BATCH_DEFAULT = 16;
+   private static final int SWEEP_STEP_TIMEOUT_MS = 2000;
+
+   private volatile boolean mSweepRunning = false;
+   // Sweep state below is only touched on the command thread
+   private int mSweepFreq;
+   private int mSweepUpper;
+   private int mSweepSpacing;
+   /* Largest distance from mSweepFreq the chip may snap a tune to */
+   private int mSweepTolerance;
+   private int mSweepTunedFreq;
+   private int mSweepTotal;
+   private int mSweepDone;
+   private int mSweepStartFreq;
+   private long mSweepStartMs;
+   private boolean mSweepSinr;
+   private int[] mSweepBatch;
+   private int mSweepBatchCount;
+
+   private final Runnable mSweepStepTimeout = new Runnable() {
+      public void run() {
+         Log.d(LOGTAG, "sweep: no tune status for " + mSweepFreq);
+         sweepChannelDone(false);
+      }
+   };
+
+   /* Starts sweeping [lowerFreq, upperFreq] in steps of spacing kHz.
+    *
+    * int batchSize: channels per onSweepResults() call, 0 for the default.
+    * @return false if the receiver is off, the range is invalid or a sweep
+    *         is already running.
+    *  Note: while the sweep runs, onTuneStatusChanged is not sent for the
+    *        swept channels; the previous station is tuned back at the end.
+    */
+   public boolean startBandSweep(final int lowerFreq, final int upperFreq,
+                                 final int spacing, int batchSize) {
+      if ((mReceiver == null) || mSweepRunning || (spacing <= 0)
+          || (upperFreq < lowerFreq)) {
+         return false;
+      }
+      final int batch = (batchSize > 0) ? batchSize : SWEEP_BATCH_DEFAULT;
+      final boolean sinr = mSinrSupported;
+      /* The chip tunes to its own grid, half a step is the nearest channel */
+      final int tolerance = FmSharedPreferences.getBandPlan().getStepSize() / 2;
+      Log.d(LOGTAG, "startBandSweep: " + lowerFreq + "-" + upperFreq
+                    + " step " + spacing);
+      return mCommandQueue.call(RadioCommandQueue.CMD_SWEEP,
+                                new Callable<Boolean>() {
+         public Boolean call() {
+            FmReceiver receiver = mReceiver;
+            if ((receiver == null) || mSweepRunning) {
+               return false;
+            }
+            mSweepFreq = lowerFreq;
+            mSweepUpper = upperFreq;
+            mSweepSpacing = spacing;
+            mSweepTolerance = tolerance;
+            mSweepTotal = (upperFreq - lowerFreq) / spacing + 1;
+            mSweepDone = 0;
+            mSweepStartFreq = FmSharedPreferences.getTunedFrequency();
+            mSweepStartMs = SystemClock.uptimeMillis();
+            mSweepSinr = sinr;
+            mSweepBatch = new int[batch * SWEEP_RECORD_SIZE];
+            mSweepBatchCount = 0;
+            mSweepRunning = true;
+            issueSweepTune(receiver);
+            return true;
+         }
+      }, false);
+   }
+
+   /* Stops a running sweep, onSweepComplete reports it as cancelled */
+   public void cancelBandSweep() {
+      if (!mSweepRunning) {
+         return;
+      }
+      /* Synchronous so fmOff()/reset() never disable mid-step */
+      mCommandQueue.call(RadioCommandQueue.CMD_SWEEP, new Callable<Void>() {
+         public Void call() {
+            if (mSweepRunning) {
+               finishSweep(true);
+            }
+            return null;
+         }
+      }, null);
+   }
+
+   /* Event thread: hand the tune status over to the command thread */
+   private void onSweepTuneStatus(final int frequency) {
+      mRequestHandler.post(new Runnable() {
+         public void run() {
+            if (mSweepRunning
+                && (Math.abs(frequency - mSweepFreq) <= mSweepTolerance)) {
+               mRequestHandler.removeCallbacks(mSweepStepTimeout);
+               mSweepTunedFreq = frequency;
+               sweepChannelDone(true);
+            }
+         }
+      });
+   }
+
+   private void issueSweepTune(FmReceiver receiver) {
+      receiver.setStation(mSweepFreq);
+      mRequestHandler.postDelayed(mSweepStepTimeout, SWEEP_STEP_TIMEOUT_MS);
+   }
+
+   private void sweepChannelDone(boolean tuned) {
+      FmReceiver receiver = mReceiver;
+      if (receiver == null) {
+         finishSweep(true);
+         return;
+      }
+      if (tuned) {
+         int base = mSweepBatchCount * SWEEP_RECORD_SIZE;
+         int[] batch = mSweepBatch;
+         /* Where the chip actually tuned, off-grid steps share a channel */
+         batch[base + SWEEP_FIELD_FREQ] = mSweepTunedFreq;
+         batch[base + SWEEP_FIELD_RSSI] = (byte) receiver.getRssi();
+         batch[base + SWEEP_FIELD_IOC] = receiver.getIoverc();
+         batch[base + SWEEP_FIELD_INTDET] = receiver.getIntDet();
+         if (mSweepSinr) {
+            batch[base + SWEEP_FIELD_MPXDCC] = 0;
+            batch[base + SWEEP_FIELD_SINR] = (byte) receiver.getSINR();
+         } else {
+            batch[base + SWEEP_FIELD_MPXDCC] = receiver.getMpxDcc();
+            batch[base + SWEEP_FIELD_SINR] = 0;
+         }
+         mSweepBatchCount++;
+      }
+      mSweepDone++;
+      mSweepFreq += mSweepSpacing;
+      if (mSweepFreq > mSweepUpper) {
+         finishSweep(false);
+         return;
+      }
+      /* Next tune goes out before the batch is delivered */
+      issueSweepTune(receiver);
+      if ((mSweepBatchCount * SWEEP_RECORD_SIZE) == mSweepBatch.length) {
+         deliverSweepBatch();
+      }
+   }
+
+   private void deliverSweepBatch() {
+      int count = mSweepBatchCount;
+      mSweepBatchCount = 0;
+      if ((count == 0) || (mCallbacks == null)) {
+         return;
+      }
+      /* In-process clients get the array itself, so never refill it */
+      int[] records = mSweepBatch;
+      mSweepBatch = new int[records.length];
+      try {
+         mCallbacks.onSweepResults(records, count, mSweepDone, mSweepTotal);
+      } catch (RemoteException e) {
+         e.printStackTrace();
+      }
+   }
+
+   private void finishSweep(boolean cancelled) {
+      mRequestHandler.removeCallbacks(mSweepStepTimeout);
+      deliverSweepBatch();
+      mSweepRunning = false;
+      mSweepBatch = null;
+      restartSignalPoll();
+      long elapsedMs = SystemClock.uptimeMillis() - mSweepStartMs;
+      Log.d(LOGTAG, "sweep " + (cancelled ? "cancelled" : "done") + ": "
+                    + mSweepDone + " channels in " + elapsedMs + "ms ("
+                    + ((elapsedMs > 0) ? (mSweepDone * 1000f / elapsedMs) : 0f)
+                    + " ch/s)");
+      FmReceiver receiver = mReceiver;
+      if (receiver != null) {
+         /* Back to the station that was playing, clients see this tune */
+         receiver.setStation(mSweepStartFreq);
+      }
+      if (mCallbacks != null) {
+         try {
+            mCallbacks.onSweepComplete(mSweepDone, elapsedMs, cancelled);
+         } catch (RemoteException e) {
+            e.printStackTrace();
+         }
+      }
+   }
+
+   /*
+    * RDS pipeline stage: PS/RT events from the FM stack are folded over
+    * mRdsCoalesceWindowMs, read once from the receiver and only forwarded
+    * to the client when PS/RT, PI or PTY actually differ from what was
+    * last published.
+    */
+   private void startRdsThread() {
+      /* Reads share the command thread so they never race chip commands */
+      mRdsHandler = new Handler(mCommandQueue.getLooper()) {
+         @Override
+         public void handleMessage(Message msg) {
+            switch (msg.what) {
+            case RDS_PS_UPDATE:
+               publishPsInfo();
+               break;
+            case RDS_RT_UPDATE:
+               publishRtInfo();
+               break;
+            }
+         }
+      };
+   }
+
+   private void stopRdsThread() {
+      if (mRdsHandler != null) {
+         mRdsHandler.removeCallbacksAndMessages(null);
+         mRdsHandler = null;
+      }
+   }
+
+   private void scheduleRdsUpdate(int what) {
+      mRdsEventsReceived.incrementAndGet();
+      Handler handler = mRdsHandler;
+      if (handler == null) {
+         return;
+      }
+      if (handler.hasMessages(what)) {
+         /* Already pending, the scheduled read picks this burst up */
+         mRdsEventsCoalesced.incrementAndGet();
+         return;
+      }
+      handler.sendEmptyMessageDelayed(what, mRdsCoalesceWindowMs);
+   }
+
+   /* Drops the cached RDS data and anything still queued for the old
+    * station, and forgets the published state so the new station is
+    * always reported
+    */
+   private void resetRdsState() {
+      synchronized (mRdsLock) {
+         mRdsGeneration++;
+         mFMRxRDSData = null;
+      }
+      Handler handler = mRdsHandler;
+      if (handler == null) {
+         return;
+      }
+      handler.removeMessages(RDS_PS_UPDATE);
+      handler.removeMessages(RDS_RT_UPDATE);
+      handler.post(new Runnable() {
+         public void run() {
+            mPublishedPs = null;
+            mPublishedRt = null;
+            mPublishedPsPi = -1;
+            mPublishedPsPty = -1;
+            mPublishedRtPi = -1;
+            mPublishedRtPty = -1;
+         }
+      });
+   }
+
+   /* @return false if data is null or the station changed meanwhile */
+   private boolean storeRdsData(FmRxRdsData data, int generation) {
+      synchronized (mRdsLock) {
+         if (generation != mRdsGeneration) {
+            return false;
+         }
+         mFMRxRDSData = data;
+      }
+      return (data != null);
+   }
+
+   private void publishPsInfo() {
+      FmReceiver receiver = mReceiver;
+      if (receiver == null) {
+         return;
+      }
+      int generation;
+      synchronized (mRdsLock) {
+         generation = mRdsGeneration;
+      }
+      FmRxRdsData data = receiver.getPSInfo();
+      if (!storeRdsData(data, generation)) {
+         return;
+      }
+      String ps = data.getPrgmServices();
+      int pi = data.getPrgmId();
+      int pty = data.getPrgmType();
+      if ((pi == mPublishedPsPi) && (pty == mPublishedPsPty)
+          && TextUtils.equals(ps, mPublishedPs)) {
+         mRdsEventsUnchanged.incrementAndGet();
+         return;
+      }
+      mPublishedPs = ps;
+      mPublishedPsPi = pi;
+      mPublishedPsPty = pty;
+      Log.d(LOGTAG, "PS: [" + ps + "] PI: [" + pi + "] PTY: [" + pty + "]");
+      try {
+         if (mCallbacks != null) {
+            if (mSnapshotCallbacks) {
+               mCallbacks.onStationSnapshotChanged(getStationSnapshot());
+            } else {
+               mCallbacks.onProgramServiceChanged();
+            }
+            mRdsEventsDelivered.incrementAndGet();
+         }
+      } catch (RemoteException e) {
+         e.printStackTrace();
+      }
+   }
+
+   private void publishRtInfo() {
+      FmReceiver receiver = mReceiver;
+      if (receiver == null) {
+         return;
+      }
+      int generation;
+      synchronized (mRdsLock) {
+         generation = mRdsGeneration;
+      }
+      FmRxRdsData data = receiver.getRTInfo();
+      if (!storeRdsData(data, generation)) {
+         return;
+      }
+      String rt = data.getRadioText();
+      int pi = data.getPrgmId();
+      int pty = data.getPrgmType();
+      if ((pi == mPublishedRtPi) && (pty == mPublishedRtPty)
+          && TextUtils.equals(rt, mPublishedRt)) {
+         mRdsEventsUnchanged.incrementAndGet();
+         return;
+      }
+      mPublishedRt = rt;
+      mPublishedRtPi = pi;
+      mPublishedRtPty = pty;
+      Log.d(LOGTAG, "RT: [" + rt + "] PI: [" + pi + "] PTY: [" + pty + "]");
+      try {
+         if (mCallbacks != null) {
+            if (mSnapshotCallbacks) {
+               mCallbacks.onStationSnapshotChanged(getStationSnapshot());
+            } else {
+               mCallbacks.onRadioTextChanged();
+            }
+            mRdsEventsDelivered.incrementAndGet();
+         }
+      } catch (RemoteException e) {
+         e.printStackTrace();
+      }
+   }
+
+   /*
+    * Sets the window over which PS/RT events are coalesced, 0 forwards
+    * each event (still deduplicated) as soon as it arrives.
+    */
+   public void setRdsCoalesceWindow(int windowMs) {
+      mRdsCoalesceWindowMs = (windowMs < 0) ? 0 : windowMs;
+   }
+
+   public int getRdsCoalesceWindow() {
+      return mRdsCoalesceWindowMs;
+   }
+
    /*
     *  Read the Tuned Frequency from the FM module.
     */
@@ -2730,23 +3889,83 @@ public class FMRadioService extends Service
       String frequencyString = getString(R.string.stat_notif_frequency, (""+frequency));
       return frequencyString;
    }
+   /* Signal metrics are read on the command thread, in order with tunes */
+   private static final int SIGNAL_RSSI = 0;
+   private static final int SIGNAL_IOC = 1;
+   private static final int SIGNAL_INTDET = 2;
+   private static final int SIGNAL_MPXDCC = 3;
+   private static final int SIGNAL_SINR = 4;
+
+   private int readSignal(final int metric) {
+      if (!isFmOn()) {
+         return 0;
+      }
+      return mCommandQueue.call(RadioCommandQueue.CMD_QUERY,
+                                new Callable<Integer>() {
+         public Integer call() {
+            FmReceiver receiver = mReceiver;
+            if (receiver == null) {
+               return null;
+            }
+            switch (metric) {
+            case SIGNAL_RSSI:
+               return receiver.getRssi();
+            case SIGNAL_IOC:
+               return receiver.getIoverc();
+            case SIGNAL_INTDET:
+               return receiver.getIntDet();
+            case SIGNAL_MPXDCC:
+               return receiver.getMpxDcc();
+            default:
+               return receiver.getSINR();
+            }
+         }
+      }, 0);
+   }
    public int getRssi() {
-           return mReceiver.getRssi();
+           return readSignal(SIGNAL_RSSI);
    }
    public int getIoC(){
-           return mReceiver.getIoverc();
+           return readSignal(SIGNAL_IOC);
    }
    public int getIntDet(){
-           return mReceiver.getIntDet();
+           return readSignal(SIGNAL_INTDET);
    }
    public int getMpxDcc(){
-           return mReceiver.getMpxDcc();
-   }
-   public void setHiLoInj(int inj){
-           mReceiver.setHiLoInj(inj);
+           return readSignal(SIGNAL_MPXDCC);
+   }
+   public void setHiLoInj(final int inj){
+           mCommandQueue.call(RadioCommandQueue.CMD_SET_OPTION,
+                              new Callable<Boolean>() {
+              public Boolean call() {
+                 FmReceiver receiver = mReceiver;
+                 if (receiver != null) {
+                    receiver.setHiLoInj(inj);
+                 }
+                 return true;
+              }
+           }, false);
    }
    public int getSINR() {
-           return mReceiver.getSINR();
+           return readSignal(SIGNAL_SINR);
+   }
+
+   /* Executed, coalesced, average and max latency (enqueue to completion)
+    * and timed out counts of a RadioCommandQueue.CMD_* type, indexed by
+    * RadioCommandQueue.STAT_*
+    */
+   public long[] getCommandStats(int command) {
+      return mCommandQueue.getStats(command);
+   }
+
+   /* RDS PS/RT event counters, indexed by RDS_STAT_* */
+   public long[] getRdsStats() {
+      long[] stats = new long[RDS_STAT_COUNT];
+      stats[RDS_STAT_RECEIVED] = mRdsEventsReceived.get();
+      stats[RDS_STAT_COALESCED] = mRdsEventsCoalesced.get();
+      stats[RDS_STAT_UNCHANGED] = mRdsEventsUnchanged.get();
+      stats[RDS_STAT_DELIVERED] = mRdsEventsDelivered.get();
+      return stats;
    }
    //handling the sleep and record stop when FM App not in focus
    private void delayedStop(long duration, int nType) {
@@ -39,24 +39,24 @@ import android.os.Handler;
 import android.os.Message;
 import android.os.RemoteException;
 import android.util.Log;
-import android.util.TypedValue;
 import android.view.View;
-import android.view.ViewGroup.LayoutParams;
+import android.view.LayoutInflater;
+import android.view.ViewGroup;
 import android.widget.AdapterView;
 import android.widget.ArrayAdapter;
+import android.widget.BaseAdapter;
 import android.widget.Button;
 import android.widget.EditText;
+import android.widget.ListView;
 import android.widget.ProgressBar;
 import android.widget.Spinner;
-import android.widget.TableLayout;
-import android.widget.TableRow;
 import android.widget.TextView;
 import android.widget.AdapterView.OnItemSelectedListener;
 import android.hardware.fmradio.FmReceiver;
 import android.os.SystemProperties;
 
+import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.util.HashMap;
@@ -70,7 +70,7 @@ public class FMStats extends Activity  {
     Button SetButton;
     Button RunButton;
     ProgressBar  pbar;
-    TableLayout tLayout;
+    ListView tLayout;
 
     private FmReceiver mReceiver;
 
@@ -81,68 +81,12 @@ public class FMStats extends Activity  {
         public int hFreq;
         public int Spacing;
     }
-    /* Data structure for Result*/
-    private class Result {
-
-      private String mFreq;
-      private String mRSSI;
-      private String mIoC;
-      private String mIntDet;
-      private String mMpxDcc;
-      private String mSINR;
-
-
-      public void setFreq(String aFreq) {
-         this.mFreq = aFreq;
-      }
-
-      public String getFreq() {
-         return mFreq;
-      }
-
-      public void setRSSI(String aRSSI) {
-         this.mRSSI = aRSSI;
-      }
-
-      public String getRSSI() {
-         return mRSSI;
-      }
-
-      public void setIoC(String aIoC) {
-         this.mIoC = aIoC;
-      }
-
-      public String getIoC() {
-         return mIoC;
-      }
-
-      public void setIntDet(String aIntDet) {
-         this.mIntDet = aIntDet;
-      }
-
-      public String getIntDet() {
-         return mIntDet;
-      }
-
-      public void setMpxDcc(String aMpxDcc) {
-         this.mMpxDcc = aMpxDcc;
-      }
-
-      public String getMpxDcc() {
-         return mMpxDcc;
-      }
-      public void setSINR(String aSINR) {
-         this.mSINR = aSINR;
-      }
-
-      public String getSINR() {
-         return mSINR;
-      }
-
-    };
-
-    /*constant column header*/
-    Result mColumnHeader = new Result();
+    /* Samples of all tests, kept as primitive columns */
+    private final StatsResults mResults = new StatsResults();
+    /* SINR is reported instead of MpxDcc on SMD transport */
+    private boolean mUseSinr = false;
+    private final StringBuilder mRowText = new StringBuilder();
+    private final ResultAdapter mResultAdapter = new ResultAdapter();
 
     boolean mTestRunning = false;
     FmRfItemSelectedListener mSpinFmRfListener = new FmRfItemSelectedListener();
@@ -153,13 +97,18 @@ public class FMStats extends Activity  {
     boolean mIsSearching = false;
     private static String LOGTAG = "FMStats";
     private static IFMRadioService mService = null;
-    private Thread mMultiUpdateThread =null;
+    /* Continuous sampler of CUR_MULTI_TEST, rate in Hz and duration in
+    seconds (0 samples until stopped) */
+    private SignalSampler mSampler = null;
+    private static final int DEFAULT_SAMPLE_RATE_HZ = 2;
+    /* Signal stream of the service, every change is reported */
+    private static final int SIGNAL_STREAM_RATE_HZ = 10;
+    private final SignalSampler.Stream mSignalStream = new SignalSampler.Stream();
+    private final int[] mStreamed = new int[SignalSampler.METRIC_COUNT];
+    private static final int DEFAULT_SAMPLE_SECS = 10;
     private static final int STATUS_UPDATE =1;
     private static final int STATUS_DONE =2;
-    private static final int STOP_ROW_ID =200;
-    private static final int NEW_ROW_ID = 300;
-    private int mStopIds = STOP_ROW_ID;
-    private int mNewRowIds = NEW_ROW_ID;
+    private static final int STATUS_SWEEP =3;
     private static final int SCAN_DWELL_PERIOD = 1;
 
     private static final int CUR_FREQ_TEST =0;
@@ -167,10 +116,13 @@ public class FMStats extends Activity  {
     private static final int SEARCH_TEST =2;
     private static final int SWEEP_TEST =3;
     private Band mBand =null;
-    private Band mSync = null;
+    private static final int SWEEP_BATCH_SIZE = 8;
     int Lo = 1, Auto = 0;
 
-    private FileOutputStream mFileCursor =null;
+    private StatsLogWriter mLogWriter =null;
+    /* Default of persist.fm.stats.log_max_kb, the size in KB at which the
+    log is rotated (0 disables rotation) */
+    private static final int DEFAULT_LOG_MAX_KB = 1024;
     private String mCurrentFileName = null;
 
     Spinner spinOptionFmRf;
@@ -198,7 +150,14 @@ public class FMStats extends Activity  {
         adaptRfCfg = ArrayAdapter.createFromResource(
             this, R.array.rf_cfg, android.R.layout.simple_spinner_item);
 
-        tLayout = (TableLayout) findViewById(R.id.maintable);
+        tLayout = (ListView) findViewById(R.id.maintable);
+        if (tLayout != null) {
+            tLayout.setAdapter(mResultAdapter);
+        }
+        /* Older samples are dropped once this many are held */
+        mResults.setLimit(SystemProperties.getInt("persist.fm.stats.max_rows",
+                                                  StatsResults.DEFAULT_LIMIT));
+        mUseSinr = "smd".equals(SystemProperties.get("ro.qualcomm.bt.hci_transport"));
 
         if(mReceiver == null)
             mReceiver = new FmReceiver();
@@ -207,8 +166,13 @@ public class FMStats extends Activity  {
         mCurrentFileName = "FMStats_".concat(Long.toString(curTime).concat(".txt"));
         Log.e(LOGTAG,"Filename is "+mCurrentFileName);
         try {
-            mFileCursor = openFileOutput(mCurrentFileName, Context.MODE_PRIVATE);
-            if(null != mFileCursor) {
+            int maxKb = SystemProperties.getInt("persist.fm.stats.log_max_kb",
+                                                DEFAULT_LOG_MAX_KB);
+            boolean gzip = SystemProperties.getBoolean("persist.fm.stats.log_gzip",
+                                                       false);
+            mLogWriter = new StatsLogWriter(new File(getFilesDir(), mCurrentFileName),
+                                            maxKb * 1024L, gzip);
+            if(null != mLogWriter) {
                Log.e(LOGTAG, "location of the file is"+getFilesDir());
             }
         } catch (IOException e) {
@@ -225,31 +189,28 @@ public class FMStats extends Activity  {
         {
            Log.d(LOGTAG, "onCreate: Start Service completed successfully");
         }
-
-	/*Initialize the column header with
-	constant values*/
-	mColumnHeader.setFreq("Freq");
-	mColumnHeader.setRSSI("RMSSI");
-	mColumnHeader.setIoC("IoC");
-        mColumnHeader.setSINR("SINR");
-	mColumnHeader.setMpxDcc("Offset");
-	mColumnHeader.setIntDet("IntDet");
     }
 
     public void onDestroy() {
-        if(null != mFileCursor ) {
-	    try {
-		mFileCursor.close();
-            } catch (IOException e) {
-
+        if(null != mLogWriter ) {
+            /* Writes out the queued lines before returning */
+            mLogWriter.close();
+            mLogWriter = null;
+        }
+	/*Stop the sampler*/
+	if(mSampler != null) {
+		mSampler.stop();
+		mSampler = null;
+	}
+	/*Stop the band sweep if there is an ongoing*/
+        if((SWEEP_TEST == mTestSelected) && (null != mService))
+        {
+            try {
+                mService.cancelBandSweep();
+            } catch (RemoteException e) {
                 e.printStackTrace();
             }
         }
-	/*Stop the thread by interrupting it*/
-	if(mMultiUpdateThread != null) {
-		mMultiUpdateThread.interrupt();
-		mMultiUpdateThread = null;
-	}
 	/*Stop the search/scan if there is an ongoing*/
         if(SEARCH_TEST == mTestSelected)
         {
@@ -281,12 +242,20 @@ public class FMStats extends Activity  {
               mTestRunning = false;
               /*Set it back to ready to Run*/
               SetButtonState(true);
-		/*Stop the thread by interrupting it*/
-	      if(mMultiUpdateThread != null) {
-	            mMultiUpdateThread.interrupt();
-		    mMultiUpdateThread = null;
+		/*Stop the sampler and log what it collected*/
+	      if((mSampler != null) && mSampler.isRunning()) {
+	            mSampler.stop();
+		    writeSamplerSummary();
 	      }
 
+              if(SWEEP_TEST == mTestSelected )
+              {
+                  try {
+                     mService.cancelBandSweep();
+                 } catch (RemoteException e) {
+                     e.printStackTrace();
+                 }
+              }
               if(SEARCH_TEST == mTestSelected )
               {
                   try {
@@ -302,11 +271,8 @@ public class FMStats extends Activity  {
 
    private void clearPreviousTestResults()
    {
-       TableLayout tl = (TableLayout) findViewById(R.id.maintable);
-       if (tl != null) {
-          tl.removeAllViewsInLayout();
-       }
-       mNewRowIds = NEW_ROW_ID;
+       mResults.clear();
+       mResultAdapter.reset();
    }
 
 
@@ -441,8 +407,7 @@ public class CfgRfItemSelectedListener implements OnItemSelectedListener {
                     }
                     break;
                 case 2:
-                    tLayout.removeAllViewsInLayout();
-                    mNewRowIds = NEW_ROW_ID;
+                    mResultAdapter.reset();
                     tLayout.setVisibility(View.VISIBLE);
                     if (txtbox1 != null) {
                        txtbox1.setVisibility(View.INVISIBLE);
@@ -476,8 +441,7 @@ public class CfgRfItemSelectedListener implements OnItemSelectedListener {
                 case 2:
                 case 3:
                     mTestSelected = pos;
-                    tLayout.removeAllViewsInLayout();
-                    mNewRowIds = NEW_ROW_ID;
+                    mResultAdapter.reset();
                     tLayout.setVisibility(View.VISIBLE);
                     RunButton = (Button)findViewById(R.id.Runbutton);
                     if (RunButton != null) {
@@ -520,81 +484,131 @@ public class CfgRfItemSelectedListener implements OnItemSelectedListener {
         }
     }
 
-    private void createResult(Result aRes) {
-        // Get the TableLayout
-        TableLayout tl = (TableLayout) findViewById(R.id.maintable);
-        if (tl == null) {
-           return;
+    private void createHeader() {
+        mResultAdapter.showHeader();
+        if(null != mLogWriter)
+        {
+           mRowText.setLength(0);
+           StatsResults.appendColumn(mRowText, "Freq");
+           StatsResults.appendColumn(mRowText, "RMSSI");
+           StatsResults.appendColumn(mRowText, "IoC");
+           StatsResults.appendColumn(mRowText, "IntDet");
+           StatsResults.appendColumn(mRowText, mUseSinr ? "SINR" : "Offset");
+           mRowText.append("\r\n");
+           writeRowText();
         }
+    }
 
-         /* Create a new row to be added. */
-        mNewRowIds++;
-        TableRow tr2 = new TableRow(getApplicationContext());
-        int width = getWindowManager().getDefaultDisplay().getWidth();
-        tr2.setLayoutParams(new LayoutParams(
-                     LayoutParams.FILL_PARENT,
-                     LayoutParams.WRAP_CONTENT));
-        tr2.setId(mNewRowIds);
-        /* Create a Button to be the row-content. */
-        TextView colFreq = new TextView(getApplicationContext());
-        colFreq.setText(aRes.getFreq());
-        colFreq.setTextSize(TypedValue.COMPLEX_UNIT_SP, 25);
-        colFreq.setWidth(width/4);
-                /* Add Button to row. */
-        tr2.addView(colFreq);
-
-        TextView colRMSSI = new TextView(getApplicationContext());
-        colRMSSI.setText(aRes.getRSSI());
-        colRMSSI.setTextSize(TypedValue.COMPLEX_UNIT_SP, 25);
-        colRMSSI.setWidth(width/4);
-        tr2.addView(colRMSSI);
-
-        TextView colIoC = new TextView(getApplicationContext());
-        colIoC.setText(aRes.getIoC());
-        colIoC.setTextSize(TypedValue.COMPLEX_UNIT_SP, 25);
-        colIoC.setWidth(width/4);
-        tr2.addView(colIoC);
-        if("smd".equals(SystemProperties.get("ro.qualcomm.bt.hci_transport")))
-        {
-             TextView colSINR = new TextView(getApplicationContext());
-             colSINR.setText(aRes.getSINR());
-             colSINR.setTextSize(TypedValue.COMPLEX_UNIT_SP, 25);
-             colSINR.setWidth(width/4);
-             tr2.addView(colSINR);
-        } else
-        {
-             TextView colMpxDcc = new TextView(getApplicationContext());
-             colMpxDcc.setText(aRes.getMpxDcc());
-             colMpxDcc.setTextSize(TypedValue.COMPLEX_UNIT_SP, 25);
-             colMpxDcc.setWidth(width/4);
-             tr2.addView(colMpxDcc);
+    private void createResult(int seq) {
+        /* Hold the store so the sample cannot be overwritten meanwhile */
+        synchronized (mResults) {
+            if (!mResults.contains(seq)) {
+               return;
+            }
+            mRowText.setLength(0);
+            mResults.appendRow(mRowText, seq, mUseSinr);
         }
-          /* Add row to TableLayout. */
-          /* Add row to TableLayout. */
-        tl.addView(tr2,new TableLayout.LayoutParams(
-             LayoutParams.FILL_PARENT,
-             LayoutParams.WRAP_CONTENT));
-        if(null != mFileCursor)
+        mResultAdapter.addSample(seq);
+        if(null != mLogWriter)
         {
-           try {
-                 StringBuilder tempStr = new StringBuilder();
-                 tempStr.append(String.format("%10s", aRes.getFreq()));
-                 tempStr.append(String.format("%10s", aRes.getRSSI()));
-                 tempStr.append(String.format("%10s", aRes.getIoC()));
-                 tempStr.append(String.format("%10s", aRes.getIntDet()));
-                 if("smd".equals(SystemProperties.get("ro.qualcomm.bt.hci_transport")))
-                 {
-                    tempStr.append(String.format("%10s", aRes.getSINR()));
-                 } else
-                 {
-                    tempStr.append(String.format("%10s", aRes.getMpxDcc()));
-                 }
-                 tempStr.append("\r\n");
-                 String testStr = new String(tempStr);
-                 mFileCursor.write(testStr.getBytes());
-           } catch(IOException ioe) {
-                 ioe.printStackTrace();
-           }
+           writeRowText();
+        }
+    }
+
+    private void writeRowText() {
+        /* Copied for the log writer thread, no file I/O on this thread */
+        mLogWriter.write(mRowText);
+    }
+
+    private static class RowViews {
+        TextView freq;
+        TextView rssi;
+        TextView ioc;
+        TextView last;
+    }
+
+    /* Result list: an optional header row followed by the samples that were
+    reported to the UI and are still held by mResults. Row views are
+    recycled, so the list costs the same however long the test runs. Only
+    used on the UI thread. */
+    private class ResultAdapter extends BaseAdapter {
+        private boolean mHeader = false;
+        /* Shown samples are the sequence numbers [mFirstSeq, mEndSeq) */
+        private int mFirstSeq = 0;
+        private int mEndSeq = 0;
+
+        public void reset() {
+            mHeader = false;
+            mFirstSeq = mEndSeq = 0;
+            notifyDataSetChanged();
+        }
+
+        public void showHeader() {
+            mHeader = true;
+            notifyDataSetChanged();
+        }
+
+        public void addSample(int seq) {
+            if (mFirstSeq == mEndSeq) {
+                mFirstSeq = seq;
+            }
+            mEndSeq = Math.max(mEndSeq, seq + 1);
+            /* Keep the count stable against overwrites from other threads */
+            mFirstSeq = Math.max(mFirstSeq, mResults.firstSeq());
+            notifyDataSetChanged();
+        }
+
+        public int getCount() {
+            return (mHeader ? 1 : 0) + (mEndSeq - mFirstSeq);
+        }
+
+        public Object getItem(int position) {
+            return null;
+        }
+
+        public long getItemId(int position) {
+            return position;
+        }
+
+        public View getView(int position, View convertView, ViewGroup parent) {
+            RowViews row;
+            if (convertView == null) {
+                convertView = LayoutInflater.from(FMStats.this).inflate(
+                                      R.layout.fmstats_row, parent, false);
+                row = new RowViews();
+                row.freq = (TextView) convertView.findViewById(R.id.stats_freq);
+                row.rssi = (TextView) convertView.findViewById(R.id.stats_rssi);
+                row.ioc = (TextView) convertView.findViewById(R.id.stats_ioc);
+                row.last = (TextView) convertView.findViewById(R.id.stats_last);
+                convertView.setTag(row);
+            } else {
+                row = (RowViews) convertView.getTag();
+            }
+            if (mHeader && (position == 0)) {
+                row.freq.setText("Freq");
+                row.rssi.setText("RMSSI");
+                row.ioc.setText("IoC");
+                row.last.setText(mUseSinr ? "SINR" : "Offset");
+                return convertView;
+            }
+            int seq = mFirstSeq + position - (mHeader ? 1 : 0);
+            synchronized (mResults) {
+                if (mResults.contains(seq)) {
+                    row.freq.setText(Integer.toString(mResults.getFreq(seq)));
+                    row.rssi.setText(Integer.toString(mResults.getRssi(seq)));
+                    row.ioc.setText(Integer.toString(mResults.getIoC(seq)));
+                    row.last.setText(Integer.toString(mUseSinr
+                                                      ? mResults.getSinr(seq)
+                                                      : mResults.getMpxDcc(seq)));
+                } else {
+                    /* Overwritten since the last notify */
+                    row.freq.setText("");
+                    row.rssi.setText("");
+                    row.ioc.setText("");
+                    row.last.setText("");
+                }
+            }
+            return convertView;
         }
     }
 
@@ -609,51 +623,46 @@ public class CfgRfItemSelectedListener implements OnItemSelectedListener {
         szbTestHeader.append("running test:").append(szTestInformation[mTestSelected]);
         szbTestHeader.append("\r\n");
         String szTestHeader = new String(szbTestHeader);
-        if(null != mFileCursor )
+        if(null != mLogWriter )
         {
-            try {
-                mFileCursor.write(szTestHeader.getBytes());
-            } catch (IOException ioe) {
-                ioe.printStackTrace();
-            }
+            mLogWriter.write(szTestHeader);
         }
         switch(mTestSelected){
             case CUR_FREQ_TEST:
                 Log.d(LOGTAG,"Current Freq test is going to run");
                 int freq = FmSharedPreferences.getTunedFrequency();
-                Result res = GetFMStatsForFreq(freq);
-                createResult(mColumnHeader);
-                createResult(res);
+                int seq = GetFMStatsForFreq(freq);
+                createHeader();
+                createResult(seq);
                 mTestRunning = false;
                 break;
             case CUR_MULTI_TEST:
                 /*Set it to ready to Stop*/
                 SetButtonState(false);
-                createResult(mColumnHeader);
+                createHeader();
 
-                if (mMultiUpdateThread == null)
+                if (mSampler != null)
                 {
-                   mMultiUpdateThread = new Thread(null, getMultipleResults,
-                                                          "MultiResultsThread");
+                   mSampler.stop();
                 }
-                /* Launch dummy thread to simulate the transfer progress */
-                Log.d(LOGTAG, "Thread State: " + mMultiUpdateThread.getState());
-                if (mMultiUpdateThread.getState() == Thread.State.TERMINATED)
+                mSampler = new SignalSampler(mService, mSignalStream, mResults,
+                                             mUseSinr, mSamplerListener);
+                int rateHz = SystemProperties.getInt("persist.fm.stats.sample_hz",
+                                                     DEFAULT_SAMPLE_RATE_HZ);
+                int durationSecs = SystemProperties.getInt(
+                                      "persist.fm.stats.sample_secs",
+                                      DEFAULT_SAMPLE_SECS);
+                if (!mSampler.start(rateHz, durationSecs))
                 {
-                    mMultiUpdateThread = new Thread(null, getMultipleResults,
-                                                          "MultiResultsThread");
-                }
-                /* If the thread state is "new" then the thread has not yet started */
-                if (mMultiUpdateThread.getState() == Thread.State.NEW)
-                {
-                    mMultiUpdateThread.start();
+                   mTestRunning = false;
+                   SetButtonState(true);
                 }
                 // returns and UI in different thread.
                 break;
             case SEARCH_TEST:
                 try {
                     Log.d(LOGTAG, "start scanning\n");
-                    if("smd".equals(SystemProperties.get("ro.qualcomm.bt.hci_transport"))) {
+                    if(mUseSinr) {
                          Log.d(LOGTAG,"Scanning with 0 scan time");
                          if (mReceiver != null)
                               mIsSearching = mReceiver.searchStations(FmReceiver.FM_RX_SRCH_MODE_SCAN,
@@ -670,7 +679,7 @@ public class CfgRfItemSelectedListener implements OnItemSelectedListener {
                 {
                     /*Set it to Ready to Stop*/
                     SetButtonState(false);
-                    createResult(mColumnHeader);
+                    createHeader();
                     Log.d(LOGTAG, "Created the results and cancel UI\n");
                 }
                 else
@@ -679,9 +688,7 @@ public class CfgRfItemSelectedListener implements OnItemSelectedListener {
                 }
                 break;
             case SWEEP_TEST:
-                int Spacing = FmSharedPreferences.getChSpacing();
-                int lowerFreq = FmSharedPreferences.getLowerLimit();
-                int higherFreq = FmSharedPreferences.getUpperLimit();
+                BandPlan plan = FmSharedPreferences.getBandPlan();
                 try {
                     Log.d(LOGTAG, "Going to set low side injection\n");
                     mService.setHiLoInj(Lo);
@@ -691,42 +698,47 @@ public class CfgRfItemSelectedListener implements OnItemSelectedListener {
                 }
                 /* Set it to Ready to stop*/
                 SetButtonState(false);
-                createResult(mColumnHeader);
-                getFMStatsInBand(lowerFreq,higherFreq,Spacing);
+                createHeader();
+                getFMStatsInBand(plan.getLowerLimit(), plan.getUpperLimit(),
+                                 plan.getChSpacing());
                 break;
         }
     }
 
-    /* Thread processing */
-    private Runnable getMultipleResults = new Runnable() {
-       public void run() {
-            /*Collect the data for the current frequency
-            20 times*/
-            int freq = FmSharedPreferences.getTunedFrequency();
+    /* Sampler thread: only sequence numbers are handed to the UI thread */
+    private final SignalSampler.Listener mSamplerListener =
+                                         new SignalSampler.Listener() {
+       public void onSample(int seq) {
+            mUIUpdateHandlerHandler.obtainMessage(STATUS_UPDATE, seq, 0)
+                                   .sendToTarget();
+       }
 
-            for (int i=0; i<20; i++)
-            {
-                try
-                {
-                    Thread.sleep(500);
-                    Message updateUI = new Message();
-                    updateUI.what = STATUS_UPDATE;
-                    updateUI.obj = (Object)GetFMStatsForFreq(freq);
-                    mUIUpdateHandlerHandler.sendMessage(updateUI);
-
-		} catch (InterruptedException e)
-		{
-			/*break the loop*/
-			break;
-		}
-            }
-            mTestRunning = false;
-            Message updateStop = new Message();
-            updateStop.what = STATUS_DONE;
-            mUIUpdateHandlerHandler.sendMessage(updateStop);
+       public void onSamplingDone() {
+            mUIUpdateHandlerHandler.post(new Runnable() {
+               public void run() {
+                  mTestRunning = false;
+                  writeSamplerSummary();
+                  SetButtonState(true);
+               }
+            });
        }
     };
 
+    private void writeSamplerSummary()
+    {
+        if (mSampler == null)
+        {
+            return;
+        }
+        mRowText.setLength(0);
+        mSampler.appendSummary(mRowText);
+        Log.d(LOGTAG, "Sampler summary:\n" + mRowText);
+        if(null != mLogWriter)
+        {
+            writeRowText();
+        }
+    }
+
     private void getFMStatsInBand(int lFreq, int hFreq, int Spacing)
     {
         if( null == mBand) {
@@ -747,103 +759,82 @@ public class CfgRfItemSelectedListener implements OnItemSelectedListener {
             mBand.Spacing = 50;
         }
 
-        if (mMultiUpdateThread == null)
-        {
-           mMultiUpdateThread = new Thread(null, getSweepResults,
-                                                  "MultiResultsThread");
-        }
-        /* Launch he dummy thread to simulate the transfer progress */
-        Log.d(LOGTAG, "Thread State: " + mMultiUpdateThread.getState());
-        if (mMultiUpdateThread.getState() == Thread.State.TERMINATED)
-        {
-            mMultiUpdateThread = new Thread(null, getSweepResults,
-                                                  "MultiResultsThread");
+        /* The service walks the band and samples each channel itself,
+        results come back in batches through onSweepResults */
+        boolean started = false;
+        try {
+            started = mService.startBandSweep(mBand.lFreq, mBand.hFreq,
+                                              mBand.Spacing, SWEEP_BATCH_SIZE);
+        } catch (RemoteException e) {
+            e.printStackTrace();
         }
-        /* If the thread state is "new" then the thread has not yet started */
-        if (mMultiUpdateThread.getState() == Thread.State.NEW)
+        if (!started)
         {
-            mMultiUpdateThread.start();
+            Log.d(LOGTAG, "SweepResults: sweep could not be started\n");
+            sweepDone();
         }
-
     }
 
-    /* Thread processing */
-    private Runnable getSweepResults = new Runnable() {
-       public void run() {
-            for (int i = mBand.lFreq; i<= mBand.hFreq; i += mBand.Spacing)
-            {
-                    try {
-                        mService.tune(i);
-                        mSync = new Band();
-                        synchronized(mSync) {
-                            mSync.wait(); //wait till notified
-                        }
-                        mSync = null;
-
-                    Message updateUI = new Message();
-                    updateUI.what = STATUS_UPDATE;
-                    updateUI.obj = (Object)GetFMStatsForFreq(i);;
-                    mUIUpdateHandlerHandler.sendMessage(updateUI);
-                    Log.d(LOGTAG,"highFerq is "+mBand.hFreq);
-                }
-                 catch (RemoteException e) {
-			Log.d(LOGTAG, "SweepResults:Tune failed\n");
-		 }
-
-                catch (InterruptedException e) {
-			/*Stop the thrad*/
-			break;
-                }
-            }
-            mTestRunning = false;
-            Message updateStop = new Message();
-            updateStop.what = STATUS_DONE;
-            try {
-              Log.d(LOGTAG, "Going to set auto hi-lo injection\n");
-              mService.setHiLoInj(Auto);
-            } catch (RemoteException e) {
-                    e.printStackTrace();
-            }
-            mUIUpdateHandlerHandler.sendMessage(updateStop);
-       }
-    };
+    private void sweepDone()
+    {
+        mTestRunning = false;
+        try {
+          Log.d(LOGTAG, "Going to set auto hi-lo injection\n");
+          mService.setHiLoInj(Auto);
+        } catch (RemoteException e) {
+                e.printStackTrace();
+        }
+        Message updateStop = new Message();
+        updateStop.what = STATUS_DONE;
+        mUIUpdateHandlerHandler.sendMessage(updateStop);
+    }
 
-    private Result GetFMStatsForFreq(int freq)
+    /* Samples the signal metrics of the tuned channel into mResults and
+    returns the sequence number of the new sample */
+    private int GetFMStatsForFreq(int freq)
     {
-        Result result =new Result();
         Log.d(LOGTAG,"freq is "+freq);
-        result.setFreq(Integer.toString(freq));
-        byte nRssi =0;
+        int nRssi =0;
         int nIoC = 0;
         int nIntDet = 0;
         int nMpxDcc = 0;
-        byte nSINR = 0;
-        if(null != mService) {
+        int nSINR = 0;
+        if(mSignalStream.read(mStreamed)) {
+           /* Pushed by the service for the current channel */
+           nRssi = mStreamed[SignalSampler.METRIC_RSSI];
+           nIoC = mStreamed[SignalSampler.METRIC_IOC];
+           nIntDet = mStreamed[SignalSampler.METRIC_INTDET];
+           if(mUseSinr) {
+              nSINR = mStreamed[SignalSampler.METRIC_SINR];
+           } else if(null != mService) {
+              try {
+                  nMpxDcc = mService.getMpxDcc();
+              } catch (RemoteException e) {
+                  e.printStackTrace();
+              }
+           }
+        } else if(null != mService) {
            try {
                nRssi = (byte)mService.getRssi();
-               result.setRSSI(Byte.toString(nRssi));
            } catch (RemoteException e) {
                e.printStackTrace();
            }
 
            try {
                nIoC = mService.getIoC();
-               result.setIoC(Integer.toString(nIoC));
            } catch (RemoteException e) {
                e.printStackTrace();
            }
 
-           if("smd".equals(SystemProperties.get("ro.qualcomm.bt.hci_transport"))) {
+           if(mUseSinr) {
               try {
                   nSINR = (byte)mService.getSINR();
-                  result.setSINR(Integer.toString(nSINR));
               } catch (RemoteException e) {
                   e.printStackTrace();
               }
            } else {
               try {
                   nMpxDcc = mService.getMpxDcc();
-                  result.setMpxDcc(Integer.toString(nMpxDcc));
               } catch (RemoteException e) {
                   e.printStackTrace();
               }
@@ -851,13 +842,12 @@ public class CfgRfItemSelectedListener implements OnItemSelectedListener {
 
            try {
                nIntDet = mService.getIntDet();
-               result.setIntDet(Integer.toString(nIntDet));
            } catch (RemoteException e) {
                e.printStackTrace();
            }
         }
 
-        return result;
+        return mResults.add(freq, nRssi, nIoC, nIntDet, nMpxDcc, nSINR);
    }
 
 
@@ -866,10 +856,14 @@ public class CfgRfItemSelectedListener implements OnItemSelectedListener {
                switch (msg.what)
                {
                case STATUS_UPDATE:
-
-                   Result myRes = (Result) msg.obj;
-                   Log.d(LOGTAG,"Status update is" +myRes.mFreq);
-                   createResult(myRes);
+                   createResult(msg.arg1);
+                   break;
+               case STATUS_SWEEP:
+                   /* arg1: first sequence number, arg2: number of samples */
+                   for (int i = 0; i < msg.arg2; i++)
+                   {
+                       createResult(msg.arg1 + i);
+                   }
                    break;
                case STATUS_DONE:
                    SetButtonState(true);
@@ -947,7 +941,7 @@ public class CfgRfItemSelectedListener implements OnItemSelectedListener {
                 try
                 {
                    mService.registerCallbacks(mServiceCallbacks);
-
+                   mService.setSignalUpdateRate(SIGNAL_STREAM_RATE_HZ, 0);
                 } catch (RemoteException e)
                 {
                    e.printStackTrace();
@@ -984,6 +978,8 @@ public class CfgRfItemSelectedListener implements OnItemSelectedListener {
           public void onTuneStatusChanged()
           {
              Log.d(LOGTAG, "mServiceCallbacks.onTuneStatusChanged :");
+             /* Until the stream reports on the new channel */
+             mSignalStream.invalidate();
              mHandler.post(mTuneComplete);
           }
 
@@ -1002,9 +998,13 @@ public class CfgRfItemSelectedListener implements OnItemSelectedListener {
              Log.d(LOGTAG, "mServiceCallbacks.onAlternateFrequencyChanged :");
           }
 
-          public void onSignalStrengthChanged()
+          public void onSignalStrengthChanged(int rssi, int sinr, int ioc,
+                                              int intDet, boolean stereo)
           {
-             Log.d(LOGTAG, "mServiceCallbacks.onSignalStrengthChanged :");
+             Log.d(LOGTAG, "mServiceCallbacks.onSignalStrengthChanged :" + rssi
+                           + " sinr " + sinr + " ioc " + ioc + " intDet " + intDet
+                           + " stereo " + stereo);
+             mSignalStream.update(rssi, sinr, ioc, intDet);
           }
 
           public void onSearchComplete()
@@ -1035,6 +1035,65 @@ public class CfgRfItemSelectedListener implements OnItemSelectedListener {
           {
              Log.d(LOGTAG, "mServiceCallbacks.onStationRDSSupported :" + bRDSSupported);
           }
+          public void onCommandComplete(int requestId, int frequency)
+          {
+             Log.d(LOGTAG, "mServiceCallbacks.onCommandComplete :" + requestId);
+          }
+          public void onCommandTimeout(int requestId)
+          {
+             Log.d(LOGTAG, "mServiceCallbacks.onCommandTimeout :" + requestId);
+          }
+          public void onStationSnapshotChanged(StationSnapshot snapshot)
+          {
+             Log.d(LOGTAG, "mServiceCallbacks.onStationSnapshotChanged :");
+          }
+          public void onSweepResults(int[] records, int count, int completed,
+                                     int total)
+          {
+             Log.d(LOGTAG, "mServiceCallbacks.onSweepResults :" + completed
+                           + "/" + total);
+             int first = -1;
+             for (int i = 0; i < count; i++)
+             {
+                int base = i * FMRadioService.SWEEP_RECORD_SIZE;
+                int seq = mResults.add(
+                              records[base + FMRadioService.SWEEP_FIELD_FREQ],
+                              records[base + FMRadioService.SWEEP_FIELD_RSSI],
+                              records[base + FMRadioService.SWEEP_FIELD_IOC],
+                              records[base + FMRadioService.SWEEP_FIELD_INTDET],
+                              records[base + FMRadioService.SWEEP_FIELD_MPXDCC],
+                              records[base + FMRadioService.SWEEP_FIELD_SINR]);
+                if (first < 0)
+                {
+                   first = seq;
+                }
+             }
+             if (first >= 0)
+             {
+                mUIUpdateHandlerHandler.obtainMessage(STATUS_SWEEP, first,
+                                                      count).sendToTarget();
+             }
+          }
+          public void onSweepComplete(int channels, long elapsedMs,
+                                      boolean cancelled)
+          {
+             float rate = (elapsedMs > 0) ? (channels * 1000f / elapsedMs) : 0f;
+             final String summary = String.format("sweep %s: %d channels in"
+                                                  + " %d ms (%.1f ch/s)\r\n",
+                                                  cancelled ? "cancelled" : "done",
+                                                  channels, elapsedMs, rate);
+             Log.d(LOGTAG, "mServiceCallbacks.onSweepComplete :" + summary);
+             /* Queued behind the last STATUS_SWEEP so the log stays ordered */
+             mUIUpdateHandlerHandler.post(new Runnable() {
+                public void run() {
+                   if(null != mLogWriter)
+                   {
+                      mLogWriter.write(summary);
+                   }
+                   sweepDone();
+                }
+             });
+          }
           public void onRecordingStopped()
           {
              Log.d(LOGTAG, "mServiceCallbacks.onDisabled :");
@@ -1049,20 +1108,11 @@ public class CfgRfItemSelectedListener implements OnItemSelectedListener {
 
      final Runnable mTuneComplete = new Runnable(){
          public void run(){
-             if((null != mMultiUpdateThread) &&(null != mSync))
-             {
-                 synchronized(mSync){
-                     mSync.notify();
-                 }
-             }
             if(mTestSelected == SEARCH_TEST) {
                 /* On every Tune Complete generate the result for the current
                 Frequency*/
-                Message updateUI = new Message();
-                updateUI.what = STATUS_UPDATE;
                 int freq = FmSharedPreferences.getTunedFrequency();
-                updateUI.obj = (Object)GetFMStatsForFreq(freq);;
-                mUIUpdateHandlerHandler.sendMessage(updateUI);
+                createResult(GetFMStatsForFreq(freq));
             }
          }
      };
@@ -128,8 +128,26 @@ public class FMTransmitterService extends Service
       Message msg = mDelayedStopHandler.obtainMessage();
       mDelayedStopHandler.sendMessageDelayed(msg, IDLE_DELAY);
       registerHeadsetListener();
+      /* Not auto-created: a standby receiver only exists while
+       * FMRadioService runs. The action keeps this binding apart from
+       * the UI clients of the receiver.
+       */
+      Intent radio = new Intent(FMRadioService.ACTION_STANDBY_CONTROL);
+      radio.setClass(this, FMRadioService.class);
+      bindService(radio, mRadioConnection, 0);
    }
 
+   /* Receiver service, used to release its standby receiver */
+   private IFMRadioService mRadioService = null;
+   private final ServiceConnection mRadioConnection = new ServiceConnection() {
+      public void onServiceConnected(ComponentName classname, IBinder obj) {
+         mRadioService = IFMRadioService.Stub.asInterface(obj);
+      }
+      public void onServiceDisconnected(ComponentName classname) {
+         mRadioService = null;
+      }
+   };
+
    @Override
    public void onDestroy() {
       Log.d(LOGTAG, "onDestroy");
@@ -152,6 +170,8 @@ public class FMTransmitterService extends Service
       }
       /* Since the service is closing, disable the receiver */
       fmOff();
+      unbindService(mRadioConnection);
+      mRadioService = null;
 
       TelephonyManager tmgr = (TelephonyManager) getSystemService(Context.TELEPHONY_SERVICE);
       tmgr.listen(mPhoneStateListener, 0);
@@ -467,6 +487,15 @@ public class FMTransmitterService extends Service
       Log.d(LOGTAG, "fmOn");
       mWakeLock.acquire(10*1000);
       if (mTransmitter == null) {
+          /* A receiver in warm standby still holds the device */
+          IFMRadioService radioService = mRadioService;
+          if (radioService != null) {
+             try {
+                radioService.releaseStandbyReceiver();
+             } catch (RemoteException e) {
+                e.printStackTrace();
+             }
+          }
           try {
                mTransmitter = new FmTransmitter(FMRADIO_DEVICE_FD_STRING, transmitCallbacks);
                Log.d(LOGTAG, "new transmitter created");
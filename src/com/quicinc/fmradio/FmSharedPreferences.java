@@ -27,6 +27,7 @@
  */
 package com.quicinc.fmradio;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -35,6 +36,9 @@ import java.util.Map;
 
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Message;
 import android.hardware.fmradio.FmReceiver;
 import android.hardware.fmradio.FmConfig;
 import android.util.Log;
@@ -108,6 +112,11 @@ public class FmSharedPreferences
    private static final String LAST_RECORD_DURATION = "last_record_duration";
    private static String  LAST_AF_JUMP_VALUE = "last_af_jump_value";
 
+   /* PresetStore configuration record: tuned frequency, list index,
+    * country, record duration, AF switch and number of lists.
+    */
+   private static final int STORE_CONFIG_SIZE = 6 * 4;
+
    private static Map<String, String> mNameMap = new HashMap<String, String>();
    private static List<PresetList> mListOfPlists = new ArrayList<PresetList>();
    private static FmConfig mFMConfiguration;
@@ -119,25 +128,69 @@ public class FmSharedPreferences
    private static final int DEFAULT_NO_RDSSUP = 0;
    private static CharSequence[] mListEntries;
    private static CharSequence[] mListValues;
-   private static int mListIndex;
+   private static volatile int mListIndex;
    private Context mContext;
-   private static int mTunedFrequency = 98100;
+   private static volatile int mTunedFrequency = 98100;
    private static int mFrequencyBand_Stepsize = 200;
 
-   private static int mCountry=0;
+   private static volatile int mCountry=0;
+   private static BandPlan mBandPlan;
+
+   /* Save() only marks the preferences dirty, the actual commit is done
+    * on the writer thread once no further Save() came in for
+    * SAVE_QUIET_PERIOD_MS. FlushAsync() has the writer thread do it right
+    * away and Flush() writes on the calling thread. mSaveLock is never
+    * held across file I/O, writes are serialized by mWriteLock.
+    */
+   private static final int SAVE_QUIET_PERIOD_MS = 1000;
+   private static final int MSG_FLUSH = 1;
+   private static final Object mSaveLock = new Object();
+   private static final Object mWriteLock = new Object();
+   /* A snapshot was taken off the pending state and is being written */
+   private static boolean mWriteInFlight = false;
+   private static HandlerThread mWriterThread;
+   private static Handler mWriterHandler;
+   private static boolean mSaveDirty = false;
+   /* What the next write puts on disk, captured by Save()/Flush() on the
+    * caller's thread and guarded by mSaveLock
+    */
+   private static ByteBuffer mPendingConfig = null;
+   private static PresetList[] mPendingLists = null;
+   /* Guards structural changes of mListOfPlists against the snapshot */
+   private static final Object mListsLock = new Object();
+   private static int mSaveRequestCount = 0;
+   private static int mSaveWriteCount = 0;
    /* true = Stereo and false = "force Mono" even if Station is transmitting a
     * Stereo signal
     */
    private static boolean mAudioOutputMode=true;
-   private static boolean mAFAutoSwitch=true;
-   private static int mRecordDuration=0;
+   private static volatile boolean mAFAutoSwitch=true;
+   private static volatile int mRecordDuration=0;
 
    FmSharedPreferences(Context context){
       mContext = context.getApplicationContext();
       mFMConfiguration = new FmConfig();
+      startWriterThread();
       Load();
    }
 
+   private static synchronized void startWriterThread() {
+      if (mWriterThread == null)
+      {
+         mWriterThread = new HandlerThread("FmPrefsWriter");
+         mWriterThread.start();
+         mWriterHandler = new Handler(mWriterThread.getLooper()) {
+            @Override
+            public void handleMessage(Message msg) {
+               if (msg.what == MSG_FLUSH)
+               {
+                  writePreferences((Context) msg.obj);
+               }
+            }
+         };
+      }
+   }
+
    public static void removeStation(int listIndex, int stationIndex){
       if (listIndex < getNumList())
       {
@@ -196,7 +249,9 @@ public class FmSharedPreferences
    public static PresetList getStationList(int listIndex){
       if (listIndex < getNumList())
       {
-         return mListOfPlists.get(listIndex);
+         PresetList list = mListOfPlists.get(listIndex);
+         list.materialize();
+         return list;
       }
       return null;
    }
@@ -268,6 +323,13 @@ public class FmSharedPreferences
 
    public static void setListIndex(int index){
       mListIndex = index;
+      /* Lists other than the current one stay in their stored form until
+       * they are navigated to.
+       */
+      if (index < getNumList())
+      {
+         mListOfPlists.get(index).materialize();
+      }
    }
 
    public static Map<String, String> getNameMap(){
@@ -350,8 +412,12 @@ public class FmSharedPreferences
 
    /* Returns the index of the list just created */
    public static int createPresetList(String name) {
-      int numLists = mListOfPlists.size();
-      mListOfPlists.add(new PresetList(name));
+      int numLists;
+      synchronized (mListsLock)
+      {
+         numLists = mListOfPlists.size();
+         mListOfPlists.add(new PresetList(name));
+      }
       String index = String.valueOf(numLists);
       mNameMap.put(name, index);
       repopulateEntryValueLists();
@@ -391,12 +457,105 @@ public class FmSharedPreferences
       {
          return;
       }
-      SharedPreferences sp = mContext.getSharedPreferences(SHARED_PREFS, Context.MODE_PRIVATE);
+      /* The in-memory state is newer than the file while a write is still
+       * pending, the writer thread puts it on disk.
+       */
+      synchronized (mSaveLock)
+      {
+         if (mSaveDirty || mWriteInFlight)
+         {
+            return;
+         }
+      }
+      ByteBuffer buf = new PresetStore(mContext).map();
+      if ((buf == null) || !loadFromStore(buf))
+      {
+         /* No usable preset store yet: pick up the old SharedPreferences
+          * layout and write it out in the binary format right away.
+          */
+         Log.d(LOGTAG, "Migrating preferences to the preset store");
+         loadFromSharedPreferences(mContext);
+         captureSnapshot();
+         FlushAsync();
+      }
+   }
+
+   private static boolean loadFromStore(ByteBuffer buf) {
+      int tunedFrequency;
+      int listIndex;
+      int country;
+      int recordDuration;
+      boolean afAutoSwitch;
+      List<PresetList> lists;
+      try
+      {
+         tunedFrequency = buf.getInt();
+         listIndex = buf.getInt();
+         country = buf.getInt();
+         recordDuration = buf.getInt();
+         afAutoSwitch = (buf.getInt() != 0);
+         int numLists = buf.getInt();
+         /* Every list record starts with its size, a corrupt count must
+          * not reach the allocation below
+          */
+         if ((numLists < 0) || (numLists > (buf.remaining() / 4)))
+         {
+            throw new IllegalArgumentException("Bad preset list count " + numLists);
+         }
+         lists = new ArrayList<PresetList>(numLists);
+         for (int listIter = 0; listIter < numLists; listIter++)
+         {
+            lists.add(PresetList.decode(buf));
+         }
+      } catch (RuntimeException e)
+      {
+         /* Truncated or corrupted store */
+         Log.e(LOGTAG, "Preset store unreadable: " + e);
+         return false;
+      }
+
+      mTunedFrequency = tunedFrequency;
+      mRecordDuration = recordDuration;
+      mAFAutoSwitch = afAutoSwitch;
+      synchronized (mListsLock)
+      {
+         mListOfPlists.clear();
+         mListOfPlists.addAll(lists);
+      }
+      mNameMap.clear();
+      for (int listIter = 0; listIter < lists.size(); listIter++)
+      {
+         mNameMap.put(lists.get(listIter).getName(), String.valueOf(listIter));
+      }
+      repopulateEntryValueLists();
+
+      /* Load Configuration */
+      setCountry(country);
+      /* Last list the user was navigating */
+      mListIndex = listIndex;
+      if(mListIndex >= lists.size())
+      {
+         mListIndex=0;
+      }
+      if (mListIndex < lists.size())
+      {
+         lists.get(mListIndex).materialize();
+      }
+      return true;
+   }
+
+   /* Legacy layout: one SharedPreferences key per list/station field */
+   private static void loadFromSharedPreferences(Context context) {
+      SharedPreferences sp = context.getSharedPreferences(SHARED_PREFS, Context.MODE_PRIVATE);
       mTunedFrequency = sp.getInt(PREF_LAST_TUNED_FREQUENCY, DEFAULT_NO_FREQUENCY);
       mRecordDuration = sp.getInt(LAST_RECORD_DURATION, RECORD_DUR_INDEX_0_VAL);
       mAFAutoSwitch = sp.getBoolean(LAST_AF_JUMP_VALUE, true);
      /* Reset the Lists before reading the preferences */
-      mListOfPlists.clear();
+      synchronized (mListsLock)
+      {
+         mListOfPlists.clear();
+      }
+      mNameMap.clear();
 
       int num_lists = sp.getInt(LIST_NUM, 1);
       for (int listIter = 0; listIter < num_lists; listIter++)
@@ -435,7 +594,6 @@ public class FmSharedPreferences
             {
                station.setRDSSupported(false);
             }
-
          }
       }
 
@@ -449,60 +607,150 @@ public class FmSharedPreferences
       }
    }
 
+   /* Request the preferences to be persisted. Calls arriving in quick
+    * succession (e.g. one per tune while seeking) are coalesced into a
+    * single write on the writer thread.
+    */
    public void Save() {
       if(mContext == null)
       {
          return;
       }
-      Log.d(LOGTAG, "Save preferences ");
+      captureSnapshot();
+      synchronized (mSaveLock)
+      {
+         mSaveRequestCount++;
+      }
+      mWriterHandler.removeMessages(MSG_FLUSH);
+      mWriterHandler.sendMessageDelayed(mWriterHandler.obtainMessage(MSG_FLUSH, mContext),
+                                        SAVE_QUIET_PERIOD_MS);
+   }
 
-      int numLists = mListOfPlists.size();
-      SharedPreferences sp = mContext.getSharedPreferences(SHARED_PREFS, Context.MODE_PRIVATE);
-      SharedPreferences.Editor ed = sp.edit();
+   /* Have the writer thread write out any pending Save() now, without
+    * waiting for the quiet period or for the write itself.
+    */
+   public void FlushAsync() {
+      if(mContext == null)
+      {
+         return;
+      }
+      mWriterHandler.removeMessages(MSG_FLUSH);
+      mWriterHandler.sendMessage(mWriterHandler.obtainMessage(MSG_FLUSH, mContext));
+   }
 
-      ed.putInt(PREF_LAST_TUNED_FREQUENCY, mTunedFrequency);
+   /* Write out any pending Save() synchronously on the calling thread. */
+   public void Flush() {
+      if(mContext == null)
+      {
+         return;
+      }
+      mWriterHandler.removeMessages(MSG_FLUSH);
+      boolean dirty;
+      synchronized (mSaveLock)
+      {
+         dirty = mSaveDirty;
+      }
+      if (dirty)
+      {
+         /* Write the current state, not the one of the last Save() */
+         captureSnapshot();
+      }
+      writePreferences(mContext);
+   }
 
-      ed.putInt(LIST_NUM, numLists);
+   /* Copies the list references and the configuration record, so the
+    * writer thread never reads state the UI thread is changing.
+    */
+   private static void captureSnapshot() {
+      PresetList[] lists;
+      synchronized (mListsLock)
+      {
+         lists = mListOfPlists.toArray(new PresetList[mListOfPlists.size()]);
+      }
+      ByteBuffer config = ByteBuffer.allocate(STORE_CONFIG_SIZE);
+      config.putInt(mTunedFrequency);
       /* Last list the user was navigating */
-      ed.putInt(LAST_LIST_INDEX, mListIndex);
+      config.putInt(mListIndex);
+      config.putInt(mCountry);
+      config.putInt(mRecordDuration);
+      config.putInt(mAFAutoSwitch ? 1 : 0);
+      config.putInt(lists.length);
+      config.flip();
+      synchronized (mSaveLock)
+      {
+         mPendingLists = lists;
+         mPendingConfig = config;
+         mSaveDirty = true;
+      }
+   }
 
-      for (int listIter = 0; listIter < numLists; listIter++)
+   /* Number of Save() requests since the process started */
+   public static int getSaveRequestCount() {
+      synchronized (mSaveLock)
       {
-         PresetList curList = mListOfPlists.get(listIter);
-         ed.putString(LIST_NAME + listIter, curList.getName());
-         int numStations = curList.getStationCount();
-         ed.putInt(STATION_NUM + listIter, numStations);
-         int numStation = 0;
-         for (int stationIter = 0; stationIter < numStations; stationIter++)
+         return mSaveRequestCount;
+      }
+   }
+
+   /* Number of Save() requests that actually reached the disk */
+   public static int getSaveWriteCount() {
+      synchronized (mSaveLock)
+      {
+         return mSaveWriteCount;
+      }
+   }
+
+   private static void writePreferences(Context context) {
+      synchronized (mWriteLock)
+      {
+         PresetList[] lists;
+         ByteBuffer config;
+         synchronized (mSaveLock)
          {
-            PresetStation station = curList.getStationFromIndex(stationIter);
-            if (station != null)
+            if (!mSaveDirty)
             {
-               ed.putString(STATION_NAME + listIter + "x" + numStation,
-                            station.getName());
-               ed.putInt(STATION_FREQUENCY + listIter + "x" + numStation,
-                         station.getFrequency());
-               ed.putInt(STATION_ID + listIter + "x" + numStation,
-                         station.getPI());
-               ed.putInt(STATION_PTY + listIter + "x" + numStation,
-                         station.getPty());
-               ed.putInt(STATION_RDS + listIter + "x" + numStation,
-                         (station.getRDSSupported() == true? 1:0));
-               numStation ++;
+               return;
             }
+            mSaveDirty = false;
+            mWriteInFlight = true;
+            lists = mPendingLists;
+            config = mPendingConfig.duplicate();
          }
-      }
+         Log.d(LOGTAG, "Save preferences ");
+
+         /* Lists that did not change hand back their cached record, only
+          * the ones touched since the last write get serialized again.
+          */
+         ByteBuffer[] records = new ByteBuffer[lists.length + 1];
+         records[0] = config;
+         for (int listIter = 0; listIter < lists.length; listIter++)
+         {
+            records[listIter + 1] = lists[listIter].encode();
+         }
+         boolean written = new PresetStore(context).write(records);
 
-      /* Save Configuration */
-      ed.putInt(FMCONFIG_COUNTRY, mCountry);
-      ed.putInt(LAST_RECORD_DURATION, mRecordDuration);
-      ed.putBoolean(LAST_AF_JUMP_VALUE, mAFAutoSwitch);
-      ed.commit();
+         synchronized (mSaveLock)
+         {
+            mWriteInFlight = false;
+            if (!written)
+            {
+               /* Try again on the next Save()/Flush(), a snapshot taken
+                * meanwhile is at least as new as this one
+                */
+               mSaveDirty = true;
+               return;
+            }
+            mSaveWriteCount++;
+         }
+      }
    }
 
    public static void SetDefaults() {
       mListIndex=0;
-      mListOfPlists.clear();
+      synchronized (mListsLock)
+      {
+         mListOfPlists.clear();
+      }
       setCountry(REGIONAL_BAND_NORTH_AMERICA);
       setRadioBand(0);
       setChSpacing(0);
@@ -517,7 +765,10 @@ public class FmSharedPreferences
       PresetList toRemove = mListOfPlists.get(mListIndex);
 
       mNameMap.remove(toRemove.getName());
-      mListOfPlists.remove(mListIndex);
+      synchronized (mListsLock)
+      {
+         mListOfPlists.remove(mListIndex);
+      }
       int numLists = mListOfPlists.size();
 
       /* Remove for others */
@@ -586,6 +837,7 @@ public class FmSharedPreferences
     */
    public static void setFMConfiguration(FmConfig mFMConfig) {
       FmSharedPreferences.mFMConfiguration = mFMConfig;
+      PresetStation.setPtyStandard(mFMConfig.getRdsStd());
    }
 
    /**
@@ -669,6 +921,7 @@ public class FmSharedPreferences
           && (std<=FmReceiver.FM_RDS_STD_NONE))
       {
          mFMConfiguration.setRdsStd(std);
+         PresetStation.setPtyStandard(std);
       }
    }
 
@@ -721,306 +974,41 @@ public class FmSharedPreferences
    }
 
    public static void setCountry(int nCountryCode){
-
-      // Default: 87500  TO 10800 IN 100 KHZ STEPS
-      mFMConfiguration.setRadioBand(FmReceiver.FM_USER_DEFINED_BAND);
-      mFMConfiguration.setChSpacing(FmReceiver.FM_CHSPACE_100_KHZ);
-      mFMConfiguration.setEmphasis(FmReceiver.FM_DE_EMP50);
-      mFMConfiguration.setRdsStd(FmReceiver.FM_RDS_STD_RDS);
-      mFMConfiguration.setLowerLimit(87500);
-      mFMConfiguration.setUpperLimit(108000);
-
-      switch(nCountryCode)
+      BandPlan plan = BandPlan.get(nCountryCode);
+      if (plan == null)
       {
-        case REGIONAL_BAND_NORTH_AMERICA:
-        {
-          /*NORTH_AMERICA : 87500 TO 108000 IN 200 KHZ STEPS*/
-          mFMConfiguration.setRadioBand(FmReceiver.FM_US_BAND);
-          mFMConfiguration.setChSpacing(FmReceiver.FM_CHSPACE_200_KHZ);
-          mFMConfiguration.setEmphasis(FmReceiver.FM_DE_EMP75);
-          mFMConfiguration.setRdsStd(FmReceiver.FM_RDS_STD_RBDS);
-          mFMConfiguration.setLowerLimit(87500);
-          mFMConfiguration.setUpperLimit(107900);
-          mFrequencyBand_Stepsize = 200;
-          break;
-        }
-        case REGIONAL_BAND_EUROPE:
-        {
-          /*EUROPE/Default : 87500 TO 10800 IN 100 KHZ STEPS*/
-          mFrequencyBand_Stepsize = 100;
-          break;
-        }
-
-        case REGIONAL_BAND_JAPAN:
-        {
-          /*JAPAN : 76000  TO 90000 IN 100 KHZ STEPS*/
-          mFMConfiguration.setRadioBand(FmReceiver.FM_JAPAN_STANDARD_BAND);
-          mFMConfiguration.setChSpacing(FmReceiver.FM_CHSPACE_100_KHZ);
-          mFMConfiguration.setEmphasis(FmReceiver.FM_DE_EMP75);
-          mFMConfiguration.setLowerLimit(76000);
-          mFMConfiguration.setUpperLimit(90000);
-          mFrequencyBand_Stepsize = 100;
-          break;
-        }
-        case REGIONAL_BAND_JAPAN_WIDE:
-        {
-          /*JAPAN_WB : 90000 TO 108000 IN 50 KHZ STEPS*/
-          mFMConfiguration.setRadioBand(FmReceiver.FM_JAPAN_WIDE_BAND);
-          mFMConfiguration.setChSpacing(FmReceiver.FM_CHSPACE_50_KHZ);
-          mFMConfiguration.setEmphasis(FmReceiver.FM_DE_EMP75);
-          mFMConfiguration.setLowerLimit(90000);
-          mFMConfiguration.setUpperLimit(108000);
-          mFrequencyBand_Stepsize = 50;
-          break;
-        }
-
-        /* Country specific */
-        case REGIONAL_BAND_AUSTRALIA:
-        {
-          /*AUSTRALIA : 87700 TO 108000 IN 100 KHZ STEPS*/
-          mFMConfiguration.setLowerLimit(87700);
-          mFrequencyBand_Stepsize = 100;
-          break;
-        }
-        case REGIONAL_BAND_AUSTRIA:
-        {
-          /*AUSTRIA : 87500 TO 108000 IN 50 KHZ STEPS*/
-          mFMConfiguration.setEmphasis(FmReceiver.FM_DE_EMP50);
-          mFrequencyBand_Stepsize = 50;
-          break;
-        }
-        case REGIONAL_BAND_BELGIUM:
-       {
-         /*BELGIUM : 87500 TO 108000 IN 100 KHZ STEPS*/
-         mFrequencyBand_Stepsize = 100;
-         break;
-       }
-       case REGIONAL_BAND_BRAZIL:
-       {
-         /*BRAZIL : 87500 TO 108000 IN 200 KHZ STEP*/
-          mFMConfiguration.setRadioBand(FmReceiver.FM_US_BAND);
-          mFMConfiguration.setChSpacing(FmReceiver.FM_CHSPACE_200_KHZ);
-          mFMConfiguration.setLowerLimit(87500);
-          mFMConfiguration.setUpperLimit(107900);
-          mFrequencyBand_Stepsize = 200;
-          break;
-        }
-        case REGIONAL_BAND_CHINA:
-        {
-          /*CHINA : 87000 TO 108000 IN 100 KHZ STEPS*/
-          mFMConfiguration.setLowerLimit(87000);
-          mFrequencyBand_Stepsize = 100;
-          break;
-        }
-        case REGIONAL_BAND_CZECH:
-        {
-          /*CZECH : 87500 TO 108000 IN 100 KHZ STEPS*/
-          mFrequencyBand_Stepsize = 100;
-          break;
-        }
-        case REGIONAL_BAND_DENMARK:
-        {
-          /*DENMARK : 87500 TO 108000 IN 50 KHZ STEPS*/
-          mFMConfiguration.setRadioBand(FmReceiver.FM_EU_BAND);
-          mFMConfiguration.setChSpacing(FmReceiver.FM_CHSPACE_50_KHZ);
-          mFrequencyBand_Stepsize = 50;
-          break;
-        }
-        case REGIONAL_BAND_FINLAND:
-        {
-          /*FINLAND : 87500  TO 108000  IN 100 KHZ STEPS*/
-          mFrequencyBand_Stepsize = 100;
-          break;
-        }
-        case REGIONAL_BAND_FRANCE:
-        {
-          /* FRANCE : 87500 TO 108000 IN 100 KHZ STEPS*/
-          mFrequencyBand_Stepsize = 100;
-          break;
-        }
-        case REGIONAL_BAND_GERMANY:
-          /*GERMANY : 87500 TO 108000 IN 50 KHZ STEPS*/
-        case REGIONAL_BAND_GREECE:
-          /*GREECE : 87500 TO 108000 IN 50 KHZ STEPS*/
-        {
-          mFMConfiguration.setRadioBand(FmReceiver.FM_EU_BAND);
-          mFMConfiguration.setChSpacing(FmReceiver.FM_CHSPACE_50_KHZ);
-          mFrequencyBand_Stepsize = 50;
-          break;
-        }
-        case REGIONAL_BAND_HONGKONG:
-        {
-          /*HONG KONG : 87500 TO 108000 IN 100 KHZ STEPS*/
-          mFrequencyBand_Stepsize = 100;
-          break;
-        }
-        case REGIONAL_BAND_INDIA:
-        {
-          /*INDIA : 91000 TO 106400 IN 100 KHZ STEPS*/
-          mFMConfiguration.setLowerLimit(91000);
-          mFMConfiguration.setUpperLimit(106400);
-          mFrequencyBand_Stepsize = 100;
-          break;
-        }
-        case REGIONAL_BAND_IRELAND:
-        {
-          /*IRELAND : 87500 TO 108000 IN 50 KHZ STEPS*/
-          mFMConfiguration.setRadioBand(FmReceiver.FM_EU_BAND);
-          mFMConfiguration.setChSpacing(FmReceiver.FM_CHSPACE_50_KHZ);
-          mFrequencyBand_Stepsize = 50;
-          break;
-        }
-        case REGIONAL_BAND_ITALY:
-        {
-          /*ITALY : 87500 TO 108000 IN 50 KHZ STEPS*/
-          mFMConfiguration.setRadioBand(FmReceiver.FM_EU_BAND);
-          mFMConfiguration.setChSpacing(FmReceiver.FM_CHSPACE_50_KHZ);
-          mFrequencyBand_Stepsize = 50;
-          break;
-        }
-        case REGIONAL_BAND_KOREA:
-        {
-          /*KOREA : 87500 TO 108000 IN 200 KHZ STEPS*/
-          mFMConfiguration.setRadioBand(FmReceiver.FM_US_BAND);
-          mFMConfiguration.setChSpacing(FmReceiver.FM_CHSPACE_200_KHZ);
-          mFMConfiguration.setUpperLimit(107900);
-          mFrequencyBand_Stepsize = 200;
-          break;
-        }
-        case REGIONAL_BAND_MEXICO:
-        {
-          /*MEXICO : 88100 TO 107900 IN 200 KHZ STEPS*/
-          mFMConfiguration.setRadioBand(FmReceiver.FM_US_BAND);
-          mFMConfiguration.setChSpacing(FmReceiver.FM_CHSPACE_200_KHZ);
-          mFMConfiguration.setEmphasis(FmReceiver.FM_DE_EMP75);
-          mFMConfiguration.setRdsStd(FmReceiver.FM_RDS_STD_RBDS);
-          mFMConfiguration.setLowerLimit(88100);
-          mFMConfiguration.setUpperLimit(107900);
-          mFrequencyBand_Stepsize = 200;
-          break;
-        }
-        case REGIONAL_BAND_NETHERLANDS:
-        {
-          /*NETHERLANDS : 87500 TO 108000 IN 100 KHZ STEPS*/
-          mFrequencyBand_Stepsize = 100;
-          break;
-        }
-        case REGIONAL_BAND_NEWZEALAND:
-        {
-          /*NEW ZEALAND : 88000 TO 107000 IN 100 KHZ STEPS*/
-          mFMConfiguration.setLowerLimit(88000);
-          mFMConfiguration.setUpperLimit(107000);
-          mFrequencyBand_Stepsize = 100;
-          break;
-        }
-        case REGIONAL_BAND_NORWAY:
-        {
-          /*NORWAY : 87500 TO 108000 IN 100 KHZ STEPS*/
-          mFrequencyBand_Stepsize = 100;
-          break;
-        }
-        case REGIONAL_BAND_POLAND:
-        {
-          /*POLAND : 88000 TO 108000 IN 50 KHZ STEPS*/
-          mFMConfiguration.setRadioBand(FmReceiver.FM_EU_BAND);
-          mFMConfiguration.setChSpacing(FmReceiver.FM_CHSPACE_50_KHZ);
-          mFMConfiguration.setLowerLimit(88000);
-          mFrequencyBand_Stepsize = 50;
-          break;
-        }
-        case REGIONAL_BAND_PORTUGAL:
-        {
-          /*PORTUGAL : 87500 TO 108000 IN 50 KHZ STEPS*/
-          mFMConfiguration.setRadioBand(FmReceiver.FM_EU_BAND);
-          mFMConfiguration.setChSpacing(FmReceiver.FM_CHSPACE_50_KHZ);
-          mFrequencyBand_Stepsize = 50;
-          break;
-        }
-        case REGIONAL_BAND_RUSSIA:
-        {
-          /*RUSSIA : 87500 TO 108000  IN 100 KHZ STEPS*/
-          mFrequencyBand_Stepsize = 100;
-          break;
-        }
-        case REGIONAL_BAND_SINGAPORE:
-        {
-          /*SINGAPORE : 88000 TO 108000 IN 100 KHZ STEPS*/
-          mFMConfiguration.setLowerLimit(88000);
-          mFrequencyBand_Stepsize = 100;
-          break;
-        }
-        case REGIONAL_BAND_SLOVAKIA:
-        {
-          /*SLOVAKIA : 87500 TO 108000 IN 100 KHZ STEPS*/
-          mFrequencyBand_Stepsize = 100;
-          break;
-        }
-        case REGIONAL_BAND_SPAIN:
-        {
-          /*SPAIN : 87500 TO 108000 IN 100 KHZ STEPS*/
-          mFrequencyBand_Stepsize = 100;
-          break;
-        }
-        case REGIONAL_BAND_SWITZERLAND:
-        {
-          /*SWITZERLAND : 87500 TO 108000 IN 100 KHZ STEPS*/
-          mFrequencyBand_Stepsize = 100;
-          break;
-        }
-        case REGIONAL_BAND_SWEDEN:
-        {
-          /*SWEDEN : 87500 TO 108000  IN 100 KHZ STEPS*/
-          mFrequencyBand_Stepsize = 100;
-          break;
-        }
-        case REGIONAL_BAND_TAIWAN:
-        {
-          /*TAIWAN : 87500 TO 108000 IN 100 KHZ STEPS*/
-          mFrequencyBand_Stepsize = 100;
-          break;
-        }
-        case REGIONAL_BAND_TURKEY:
-        {
-          /*TURKEY : 87500 TO 108000 IN 100 KHZ STEPS*/
-          mFrequencyBand_Stepsize = 100;
-          break;
-        }
-        case REGIONAL_BAND_UNITEDKINGDOM:
-        {
-          /*UNITED KINGDOM : 87500 TO 108000 IN 100 KHZ STEPS*/
-          mFrequencyBand_Stepsize = 100;
-          break;
-        }
-        case REGIONAL_BAND_UNITED_STATES:
-        {
-          /*UNITED STATES : 88100 TO 107900 IN 200 KHZ STEPS*/
-          mFMConfiguration.setRadioBand(FmReceiver.FM_US_BAND);
-          mFMConfiguration.setChSpacing(FmReceiver.FM_CHSPACE_200_KHZ);
-          mFMConfiguration.setEmphasis(FmReceiver.FM_DE_EMP75);
-          mFMConfiguration.setRdsStd(FmReceiver.FM_RDS_STD_RBDS);
-          mFMConfiguration.setLowerLimit(88100);
-          mFMConfiguration.setUpperLimit(107900);
-          mFrequencyBand_Stepsize = 200;
-          break;
-        }
-        default:
-        {
-          Log.d(LOGTAG, "Invalid: countryCode: "+nCountryCode);
-          nCountryCode=0;
-        }
+         Log.d(LOGTAG, "Invalid: countryCode: "+nCountryCode);
+         plan = BandPlan.DEFAULT;
+         nCountryCode = plan.getCountry();
       }
-    mCountry = nCountryCode;
-    Log.d(LOGTAG, "=====================================================");
-    Log.d(LOGTAG, "Country     :"+nCountryCode);
-    Log.d(LOGTAG, "RadioBand   :"+ mFMConfiguration.getRadioBand());
-    Log.d(LOGTAG, "Emphasis    :"+ mFMConfiguration.getEmphasis());
-    Log.d(LOGTAG, "ChSpacing   :"+ mFMConfiguration.getChSpacing());
-    Log.d(LOGTAG, "RdsStd      :"+ mFMConfiguration.getRdsStd());
-    Log.d(LOGTAG, "LowerLimit  :"+ mFMConfiguration.getLowerLimit());
-    Log.d(LOGTAG, "UpperLimit  :"+ mFMConfiguration.getUpperLimit());
-    Log.d(LOGTAG, "=====================================================");
+      plan.applyTo(mFMConfiguration);
+      mFrequencyBand_Stepsize = plan.getStepSize();
+      mBandPlan = plan;
+      mCountry = nCountryCode;
+      PresetStation.setPtyStandard(plan.getRdsStd());
+      Log.d(LOGTAG, "Country " + nCountryCode
+                    + " band " + plan.getRadioBand()
+                    + " emphasis " + plan.getEmphasis()
+                    + " spacing " + plan.getChSpacing()
+                    + " rdsStd " + plan.getRdsStd()
+                    + " limits " + plan.getLowerLimit()
+                    + "-" + plan.getUpperLimit()
+                    + " channels " + plan.getChannelCount());
    }
 
+   /* Band plan of the current configuration. Falls back to a custom plan
+    * once band, spacing or limits were changed away from the country's.
+    */
+   public static BandPlan getBandPlan() {
+      BandPlan plan = mBandPlan;
+      if ((plan == null) || !plan.matches(mFMConfiguration, mFrequencyBand_Stepsize))
+      {
+         plan = BandPlan.fromConfig(mCountry, mFMConfiguration,
+                                    mFrequencyBand_Stepsize);
+         mBandPlan = plan;
+      }
+      return plan;
+   }
 
    public static int getCountry() {
       return mCountry;
@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2012, Code Aurora Forum. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *        * Redistributions of source code must retain the above copyright
+ *            notice, this list of conditions and the following disclaimer.
+ *        * Redistributions in binary form must reproduce the above copyright
+ *            notice, this list of conditions and the following disclaimer in the
+ *            documentation and/or other materials provided with the distribution.
+ *        * Neither the name of Code Aurora nor
+ *            the names of its contributors may be used to endorse or promote
+ *            products derived from this software without specific prior written
+ *            permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NON-INFRINGEMENT ARE DISCLAIMED.    IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.quicinc.fmradio;
+
+import java.util.Arrays;
+
+/*
+ * Open addressing map from a frequency (kHz) to a position in a list.
+ * Keys and values are kept in primitive arrays, so lookups neither box
+ * nor allocate. Entries are never removed: each PresetList.Snapshot
+ * builds its own index and the index is not changed once published.
+ */
+public class FrequencyIndex
+{
+   private static final int EMPTY = -1;
+   private static final int MIN_CAPACITY = 16;
+
+   private int[] mKeys;
+   private int[] mValues;
+   private int mMask;
+   private int mSize;
+
+   public FrequencyIndex() {
+      allocate(MIN_CAPACITY);
+   }
+
+   private void allocate(int capacity) {
+      mKeys = new int[capacity];
+      mValues = new int[capacity];
+      Arrays.fill(mValues, EMPTY);
+      mMask = capacity - 1;
+      mSize = 0;
+   }
+
+   private static int slot(int key, int mask) {
+      int h = key * 0x9E3779B9;
+      return (h ^ (h >>> 16)) & mask;
+   }
+
+   /** @return the position stored for "frequency", or -1 if none. */
+   public int get(int frequency) {
+      int[] keys = mKeys;
+      int[] values = mValues;
+      int i = slot(frequency, mMask);
+      while (values[i] != EMPTY)
+      {
+         if (keys[i] == frequency)
+         {
+            return values[i];
+         }
+         i = (i + 1) & mMask;
+      }
+      return EMPTY;
+   }
+
+   public boolean contains(int frequency) {
+      return (get(frequency) != EMPTY);
+   }
+
+   /** Stores "position" for "frequency", replacing any earlier one. */
+   public void put(int frequency, int position) {
+      /* Keep the load factor at or below one half */
+      if ((mSize + 1) * 2 > mKeys.length)
+      {
+         grow();
+      }
+      int i = slot(frequency, mMask);
+      while (mValues[i] != EMPTY)
+      {
+         if (mKeys[i] == frequency)
+         {
+            mValues[i] = position;
+            return;
+         }
+         i = (i + 1) & mMask;
+      }
+      mKeys[i] = frequency;
+      mValues[i] = position;
+      mSize++;
+   }
+
+   private void grow() {
+      int[] keys = mKeys;
+      int[] values = mValues;
+      allocate(keys.length * 2);
+      for (int i = 0; i < keys.length; i++)
+      {
+         if (values[i] != EMPTY)
+         {
+            int j = slot(keys[i], mMask);
+            while (mValues[j] != EMPTY)
+            {
+               j = (j + 1) & mMask;
+            }
+            mKeys[j] = keys[i];
+            mValues[j] = values[i];
+            mSize++;
+         }
+      }
+   }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2012, Code Aurora Forum. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *        * Redistributions of source code must retain the above copyright
+ *            notice, this list of conditions and the following disclaimer.
+ *        * Redistributions in binary form must reproduce the above copyright
+ *            notice, this list of conditions and the following disclaimer in the
+ *            documentation and/or other materials provided with the distribution.
+ *        * Neither the name of Code Aurora nor
+ *            the names of its contributors may be used to endorse or promote
+ *            products derived from this software without specific prior written
+ *            permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NON-INFRINGEMENT ARE DISCLAIMED.    IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.quicinc.fmradio;
+
+/*
+ * kHz part of a frequency as shown by the FrequencyPicker: one label per
+ * step within a MHz and the arithmetic between picker index (1 based) and
+ * kHz offset. There are only four layouts (50, 100 and 200 kHz on even or
+ * odd 100 kHz), built once and shared, so the picker never allocates label
+ * arrays while the user scrolls. Label arrays must not be modified.
+ */
+public final class FrequencySteps
+{
+   private static final FrequencySteps STEPS_50 = new FrequencySteps(50, 0,
+      new String[] {"00","05","10","15","20","25","30","35","40","45",
+                    "50","55","60","65","70","75","80","85","90","95"});
+   private static final FrequencySteps STEPS_100 = new FrequencySteps(100, 0,
+      new String[] {"0","1","2","3","4","5","6","7","8","9"});
+   private static final FrequencySteps STEPS_200_EVEN = new FrequencySteps(200, 0,
+      new String[] {"0","2","4","6","8"});
+   private static final FrequencySteps STEPS_200_ODD = new FrequencySteps(200, 100,
+      new String[] {"1","3","5","7","9"});
+
+   private final int mStep;
+   private final int mOffset;
+   private final String[] mLabels;
+
+   private FrequencySteps(int step, int offset, String[] labels) {
+      mStep = step;
+      mOffset = offset;
+      mLabels = labels;
+   }
+
+   /* Layout for a band starting at min with stepSize kHz, any step other
+    * than 50 or 100 is taken as 200 kHz.
+    */
+   public static FrequencySteps get(int min, int stepSize) {
+      if (stepSize == 100) {
+         return STEPS_100;
+      } else if (stepSize == 50) {
+         return STEPS_50;
+      }
+      return ((min % 200) == 0) ? STEPS_200_EVEN : STEPS_200_ODD;
+   }
+
+   /* The layout with the most labels */
+   public static FrequencySteps widest() {
+      return STEPS_50;
+   }
+
+   public String[] getLabels() {
+      return mLabels;
+   }
+
+   public int getCount() {
+      return mLabels.length;
+   }
+
+   /* @return picker index (1 based) of the kHz part of frequency */
+   public int getIndex(int frequency) {
+      return ((frequency % 1000) / mStep) + 1;
+   }
+
+   /* @return kHz offset within the MHz for a picker index */
+   public int getKHz(int index) {
+      return ((index - 1) * mStep) + mOffset;
+   }
+
+   /* @return frequency clamped to [min, max] */
+   public static int clamp(int frequency, int min, int max) {
+      if (frequency < min) {
+         return min;
+      }
+      if (frequency > max) {
+         return max;
+      }
+      return frequency;
+   }
+}
@@ -28,18 +28,142 @@
 
 package com.quicinc.fmradio;
 
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 public class PresetList{
-    private    List<PresetStation> mPresetList = new ArrayList<PresetStation>();
-    private    int mCurrentStation = 0;
-    private    String mListName = "";
+    /* Immutable view of the stations. Writers build a new one under the
+     * list lock and publish it through mSnapshot, readers never lock.
+     */
+    private static final class Snapshot {
+        final PresetStation[] stations;
+        /* Frequency -> position of the first station on that frequency */
+        final FrequencyIndex index;
+        /* Position of the next station on the same frequency, -1 if none */
+        final int[] next;
+
+        Snapshot(PresetStation[] presets) {
+            stations = presets;
+            index = new FrequencyIndex();
+            next = new int[presets.length];
+            /* Back to front, so each put() leaves the first position */
+            for (int presetNum = presets.length - 1; presetNum >= 0; presetNum-- ) {
+                int freq = presets[presetNum].getFrequency();
+                next[presetNum] = index.get(freq);
+                index.put(freq, presetNum);
+            }
+        }
+    }
+
+    private static final Snapshot EMPTY = new Snapshot(new PresetStation[0]);
+    /* Frequency, PI, PTY, RDS flag and the length of an empty name */
+    private static final int STATION_MIN_SIZE = 17;
+
+    /* Null while a lazily loaded list only holds mEncoded, see snapshot() */
+    private    volatile Snapshot mSnapshot = EMPTY;
+    private    volatile int mCurrentStation = 0;
+    private    volatile String mListName = "";
+    /* Name or station count changed since the list was last persisted */
+    private    boolean mListDirty = true;
+    /* Last PresetStore record of this list, rebuilt only when dirty */
+    private    ByteBuffer mEncoded = null;
 
     public PresetList(String name) {
         mListName = name;
     }
 
+    /* Creates a list that keeps only its name and its PresetStore record.
+     * The stations are decoded the first time they are needed.
+     */
+    private PresetList(String name, ByteBuffer encoded) {
+        mListName = name;
+        mEncoded = encoded;
+        mSnapshot = null;
+        mListDirty = false;
+    }
+
+    public boolean isMaterialized(){
+        return (mSnapshot != null);
+    }
+
+    /* Decode the stations now if the list was loaded lazily */
+    public void materialize(){
+        snapshot();
+    }
+
+    private Snapshot snapshot(){
+        Snapshot snap = mSnapshot;
+        if (snap == null) {
+            snap = decodeStations();
+        }
+        return snap;
+    }
+
+    private synchronized Snapshot decodeStations(){
+        if (mSnapshot != null) {
+            return mSnapshot;
+        }
+        ByteBuffer record = mEncoded.duplicate();
+        PresetStation[] presets = new PresetStation[0];
+        try {
+            record.getInt();
+            PresetStore.getString(record);
+            int totalPresets = record.getInt();
+            if ((totalPresets < 0)
+                || (totalPresets > (record.remaining() / STATION_MIN_SIZE))) {
+                throw new IllegalArgumentException("Bad preset count " + totalPresets);
+            }
+            presets = new PresetStation[totalPresets];
+            for (int presetNum = 0; presetNum < totalPresets; presetNum++ ) {
+                int freq = record.getInt();
+                int pi = record.getInt();
+                int pty = record.getInt();
+                boolean rds = (record.get() != 0);
+                PresetStation station = new PresetStation(PresetStore.getString(record), freq);
+                station.setPI(pi);
+                station.setPty(pty);
+                station.setRDSSupported(rds);
+                station.markSaved(station.getVersion());
+                station.setOwner(this);
+                presets[presetNum] = station;
+            }
+        } catch (RuntimeException e) {
+            /* Corrupted record, keep what could be read and rewrite it */
+            int valid = 0;
+            while ((valid < presets.length) && (presets[valid] != null)) {
+                valid++;
+            }
+            presets = Arrays.copyOf(presets, valid);
+            mListDirty = true;
+        }
+        mSnapshot = new Snapshot(presets);
+        return mSnapshot;
+    }
+
+    /* Must hold the list lock */
+    private void publish(PresetStation[] presets){
+        mSnapshot = new Snapshot(presets);
+        mListDirty = true;
+    }
+
+    /* Called by a station of this list when its frequency changed */
+    synchronized void onStationFrequencyChanged(){
+        Snapshot snap = mSnapshot;
+        if (snap != null) {
+            /* Same stations, fresh frequency index */
+            mSnapshot = new Snapshot(snap.stations);
+        }
+    }
+
+    /** Returns a consistent, read-only view of the stations at the time of
+     *  the call. Later changes to the list do not show up in it.
+     */
+    public List<PresetStation> getStations(){
+        return Collections.unmodifiableList(Arrays.asList(snapshot().stations));
+    }
+
     public String getName(){
         return mListName;
     }
@@ -48,58 +172,134 @@ public class PresetList{
         return mListName;
     }
 
-    public synchronized int getStationCount(){
-        return mPresetList.size();
+    public int getStationCount(){
+        return snapshot().stations.length;
     }
 
-    public synchronized String getStationName(int stationNum){
+    public String getStationName(int stationNum){
+        PresetStation[] presets = snapshot().stations;
         String name = "";
-        if (mPresetList.size() > stationNum){
-            name = mPresetList.get(stationNum).getName();
+        if (presets.length > stationNum){
+            name = presets[stationNum].getName();
         }
         return name;
     }
 
-    public synchronized int getStationFrequency(int stationNum){
+    public int getStationFrequency(int stationNum){
+        PresetStation[] presets = snapshot().stations;
         int frequency = 102100;
-        if (mPresetList.size() > stationNum){
-            frequency = mPresetList.get(stationNum).getFrequency();
+        if (presets.length > stationNum){
+            frequency = presets[stationNum].getFrequency();
         }
         return frequency;
     }
 
-    public void setName(String name){
+    public synchronized void setName(String name){
         mListName = name;
+        mListDirty = true;
     }
 
-    public synchronized void setStationFrequency(int stationNum, int frequency){
-        PresetStation mStation = mPresetList.get(stationNum);
+    synchronized boolean isListDirty(){
+        return mListDirty;
+    }
+
+    synchronized void setListDirty(boolean dirty){
+        mListDirty = dirty;
+    }
+
+    /* Returns the PresetStore record for this list. The cached record is
+     * reused as long as neither the list nor any of its stations changed.
+     */
+    synchronized ByteBuffer encode(){
+        Snapshot snap = mSnapshot;
+        if ((snap == null) && !mListDirty) {
+            /* Never materialized, the stored record is still current */
+            return mEncoded.duplicate();
+        }
+        PresetStation[] presets = snapshot().stations;
+        int totalPresets = presets.length;
+        boolean dirty = mListDirty || (mEncoded == null);
+        for (int presetNum = 0; presetNum < totalPresets; presetNum++ ) {
+            dirty |= presets[presetNum].isDirty();
+        }
+        if (dirty) {
+            /* Stations are not guarded by the list lock, so size the record
+             * from the same name references that get written.
+             */
+            String listName = mListName;
+            String[] names = new String[totalPresets];
+            int[] versions = new int[totalPresets];
+            int size = PresetStore.stringSize(listName) + 4;
+            for (int presetNum = 0; presetNum < totalPresets; presetNum++ ) {
+                versions[presetNum] = presets[presetNum].getVersion();
+                names[presetNum] = presets[presetNum].getName();
+                size += 13 + PresetStore.stringSize(names[presetNum]);
+            }
+            ByteBuffer buf = ByteBuffer.allocate(4 + size);
+            buf.putInt(size);
+            PresetStore.putString(buf, listName);
+            buf.putInt(totalPresets);
+            for (int presetNum = 0; presetNum < totalPresets; presetNum++ ) {
+                PresetStation station = presets[presetNum];
+                buf.putInt(station.getFrequency());
+                buf.putInt(station.getPI());
+                buf.putInt(station.getPty());
+                buf.put((byte)(station.getRDSSupported() ? 1 : 0));
+                PresetStore.putString(buf, names[presetNum]);
+                /* A change made since versions[] was read keeps it dirty */
+                station.markSaved(versions[presetNum]);
+            }
+            buf.flip();
+            mEncoded = buf;
+            mListDirty = false;
+        }
+        return mEncoded.duplicate();
+    }
+
+    /* Builds a list from a record written by encode(). Only the name is
+     * decoded, the record itself is kept and expanded on first use.
+     */
+    static PresetList decode(ByteBuffer buf){
+        int size = buf.getInt();
+        int end = buf.position() + size;
+        if ((size < 0) || (end > buf.limit())) {
+            throw new IllegalArgumentException("Bad preset list record size " + size);
+        }
+        ByteBuffer record = buf.duplicate();
+        record.limit(end);
+        String name = PresetStore.getString(record);
+
+        buf.position(buf.position() - 4);
+        ByteBuffer encoded = buf.slice();
+        encoded.limit(4 + size);
+        buf.position(end);
+        return new PresetList(name, encoded);
+    }
+
+    public void setStationFrequency(int stationNum, int frequency){
+        PresetStation mStation = snapshot().stations[stationNum];
         mStation.setFrequency(frequency);
     }
 
-    public synchronized void setStationName(int stationNum, String name){
-        PresetStation mStation = mPresetList.get(stationNum);
+    public void setStationName(int stationNum, String name){
+        PresetStation mStation = snapshot().stations[stationNum];
         mStation.setName(name);
     }
 
-    public synchronized PresetStation getStationFromIndex(int index){
-        int totalPresets = mPresetList.size();
+    public PresetStation getStationFromIndex(int index){
+        PresetStation[] presets = snapshot().stations;
         PresetStation station = null;
-        if (index < totalPresets) {
-            station = mPresetList.get(index);
+        if (index < presets.length) {
+            station = presets[index];
         }
         return station;
     }
 
-    public synchronized PresetStation getStationFromFrequency(int frequency){
-        int totalPresets = mPresetList.size();
-        for (int presetNum = 0; presetNum < totalPresets; presetNum++ ) {
-            PresetStation station = mPresetList.get(presetNum);
-            if (station != null) {
-                if(frequency == station.getFrequency()) {
-                    return station;
-                }
-            }
+    public PresetStation getStationFromFrequency(int frequency){
+        Snapshot snap = snapshot();
+        int presetNum = snap.index.get(frequency);
+        if (presetNum >= 0) {
+            return snap.stations[presetNum];
         }
         return null;
     }
@@ -107,7 +307,7 @@ public class PresetList{
     public synchronized PresetStation addStation(String name, int freq){
         PresetStation addStation = new PresetStation(name, freq);
         if(addStation != null) {
-            mPresetList.add(addStation);
+            stationAdded(addStation);
         }
         return addStation;
     }
@@ -116,46 +316,64 @@ public class PresetList{
         PresetStation addStation = null;
         if(station != null) {
             addStation = new PresetStation (station);
-            mPresetList.add(addStation);
+            stationAdded(addStation);
         }
         return addStation;
     }
 
+    private void stationAdded(PresetStation station){
+        PresetStation[] presets = snapshot().stations;
+        PresetStation[] updated = Arrays.copyOf(presets, presets.length + 1);
+        updated[presets.length] = station;
+        station.setOwner(this);
+        publish(updated);
+    }
+
     public synchronized void removeStation(int index){
-       int totalPresets = mPresetList.size();
+       PresetStation[] presets = snapshot().stations;
+       int totalPresets = presets.length;
        if(index < totalPresets)
        {
-          mPresetList.remove(index);
+          PresetStation[] updated = new PresetStation[totalPresets - 1];
+          System.arraycopy(presets, 0, updated, 0, index);
+          System.arraycopy(presets, index + 1, updated, index, totalPresets - index - 1);
+          presets[index].setOwner(null);
+          publish(updated);
        }
     }
 
     public synchronized void removeStation(PresetStation station){
-       int index = mPresetList.indexOf(station);
-       int totalPresets = mPresetList.size();
-       if(index < totalPresets)
+       PresetStation[] presets = snapshot().stations;
+       int index = Arrays.asList(presets).indexOf(station);
+       int totalPresets = presets.length;
+       if((index >= 0) && (index < totalPresets))
        {
-          mPresetList.remove(index);
+          removeStation(index);
        }
     }
     public synchronized void clear(){
-        mPresetList.clear();
+        PresetStation[] presets = snapshot().stations;
+        for (int presetNum = 0; presetNum < presets.length; presetNum++ ) {
+            presets[presetNum].setOwner(null);
+        }
+        mSnapshot = EMPTY;
+        mListDirty = true;
     }
 
     /* If a user selects a new station in this list, this routine will be called to
      * to update the list.
      */
-    public synchronized boolean setSelectedStation(PresetStation selectStation){
-        int totalPresets = mPresetList.size();
+    public boolean setSelectedStation(PresetStation selectStation){
         if (selectStation != null) {
-            for (int presetNum = 0; presetNum < totalPresets; presetNum++ ) {
-                PresetStation station = mPresetList.get(presetNum);
-                if (station != null) {
-                    if(selectStation.getFrequency() == station.getFrequency()) {
-                        if(selectStation.getName().equalsIgnoreCase(station.getName())) {
-                            mCurrentStation = presetNum;
-                            return true;
-                        }
-                    }
+            Snapshot snap = snapshot();
+            /* Only the stations chained on the frequency are visited */
+            for (int presetNum = snap.index.get(selectStation.getFrequency());
+                 presetNum >= 0; presetNum = snap.next[presetNum]) {
+                PresetStation station = snap.stations[presetNum];
+                if ((station == selectStation)
+                    || selectStation.getName().equalsIgnoreCase(station.getName())) {
+                    mCurrentStation = presetNum;
+                    return true;
                 }
             }
         }
@@ -165,17 +383,9 @@ public class PresetList{
     /* Check if the same station already exists in a List
      * to update the list.
      */
-    public synchronized boolean sameStationExists(PresetStation compareStation){
-        int totalPresets = mPresetList.size();
+    public boolean sameStationExists(PresetStation compareStation){
         if (compareStation != null) {
-            for (int presetNum = 0; presetNum < totalPresets; presetNum++ ) {
-                PresetStation station = mPresetList.get(presetNum);
-                if (station != null) {
-                    if(compareStation.getFrequency() == station.getFrequency()) {
-                        return true;
-                    }
-                }
-            }
+            return snapshot().index.contains(compareStation.getFrequency());
         }
         return false;
     }
@@ -183,9 +393,9 @@ public class PresetList{
     /* If a user selects a new station in this list, this routine will be called to
      * to update the list.
      */
-    public synchronized boolean setSelectedStation(int stationIndex){
+    public boolean setSelectedStation(int stationIndex){
         boolean foundStation = false;
-        int totalPresets = mPresetList.size();
+        int totalPresets = snapshot().stations.length;
         if (stationIndex < totalPresets) {
             mCurrentStation = stationIndex;
             foundStation = true;
@@ -193,52 +403,51 @@ public class PresetList{
         return foundStation;
     }
 
-    public synchronized PresetStation getSelectedStation(){
-        int totalPresets = mPresetList.size();
+    public PresetStation getSelectedStation(){
+        PresetStation[] presets = snapshot().stations;
+        int current = mCurrentStation;
         PresetStation station = null;
-        if (mCurrentStation < totalPresets) {
-            station = mPresetList.get(mCurrentStation);
+        if (current < presets.length) {
+            station = presets[current];
         }
         return station;
     }
 
     public synchronized PresetStation selectNextStation(){
-        int totalPresets = mPresetList.size();
+        PresetStation[] presets = snapshot().stations;
+        int totalPresets = presets.length;
         PresetStation station = null;
         if(totalPresets > 0) {
-            mCurrentStation ++;
-            if ( (mCurrentStation) >= totalPresets) {
-                mCurrentStation =0;
+            int current = mCurrentStation + 1;
+            if (current >= totalPresets) {
+                current = 0;
             }
-            station = mPresetList.get(mCurrentStation);
+            mCurrentStation = current;
+            station = presets[current];
         }
         return station;
     }
 
     public synchronized PresetStation selectPrevStation(){
-        int totalPresets = mPresetList.size();
+        PresetStation[] presets = snapshot().stations;
+        int totalPresets = presets.length;
         PresetStation station = null;
         if(totalPresets > 0) {
-            mCurrentStation --;
-            if ( mCurrentStation < 0) {
-                mCurrentStation = totalPresets-1;
+            int current = mCurrentStation - 1;
+            if ((current < 0) || (current >= totalPresets)) {
+                current = totalPresets-1;
             }
-            station = mPresetList.get(mCurrentStation);
+            mCurrentStation = current;
+            station = presets[current];
         }
         return station;
     }
 
-    public synchronized void selectStation(PresetStation selectStation){
-        int totalPresets = mPresetList.size();
+    public void selectStation(PresetStation selectStation){
         if (selectStation != null) {
-            for (int presetNum = 0; presetNum < totalPresets; presetNum++ ) {
-                PresetStation station = mPresetList.get(presetNum);
-                if (station != null) {
-                    if(selectStation.getFrequency() == station.getFrequency()) {
-                        mCurrentStation    = presetNum;
-                        return;
-                    }
-                }
+            int presetNum = snapshot().index.get(selectStation.getFrequency());
+            if (presetNum >= 0) {
+                mCurrentStation    = presetNum;
             }
         }
     }
@@ -250,7 +459,7 @@ public class PresetList{
         String name ;
         int pty ;
 
-        mPresetList.clear();
+        clear();
         freq = 89500;
         name = "KPBS";
         pty = 22; //public
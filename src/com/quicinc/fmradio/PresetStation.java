@@ -33,6 +33,8 @@ import android.hardware.fmradio.FmReceiver;
 import android.text.TextUtils;
 //import android.util.Log;
 
+import java.util.Arrays;
+
 public class PresetStation
 {
    private String mName = "";
@@ -40,8 +42,18 @@ public class PresetStation
    private int mPty = 0;
    private int mPI = 0;
    private String mPtyStr = "";
+   /* PTY table mPtyStr was resolved from, see getPtyString() */
+   private String[] mPtyNames = null;
    private String mPIStr = "";
    private boolean  mRDSSupported = false;
+   /* Bumped after every change of a persisted field. The writer records
+    * the version it read the fields at, so a change racing the write
+    * leaves the station dirty instead of being lost.
+    */
+   private volatile int mVersion = 1;
+   private volatile int mSavedVersion = 0;
+   /* List holding this station, told about frequency changes */
+   private PresetList mOwner = null;
 
    public PresetStation(String name, int frequency) {
            mName = name;
@@ -72,7 +84,13 @@ public class PresetStation
       mRDSSupported = station.getRDSSupported();
 
       mPtyStr = station.getPtyString();
+      mPtyNames = sPtyNames;
       mPIStr = station.getPIString();
+      mVersion++;
+      if (mOwner != null)
+      {
+         mOwner.onStationFrequencyChanged();
+      }
    }
 
    public boolean equals(PresetStation station) {
@@ -101,6 +119,7 @@ public class PresetStation
       {
          mName = ""+mFrequency/1000.0;
       }
+      mVersion++;
    }
 
    public void setFrequency(int freq){
@@ -110,21 +129,49 @@ public class PresetStation
       {
          mName = ""+mFrequency/1000.0;
       }
+      mVersion++;
+      if (mOwner != null)
+      {
+         mOwner.onStationFrequencyChanged();
+      }
       return;
    }
 
    public void setPty(int pty){
       mPty = pty;
-      mPtyStr = PresetStation.parsePTY(mPty);
+      mPtyNames = sPtyNames;
+      mPtyStr = lookupPty(mPtyNames, mPty);
+      mVersion++;
    }
 
    public void setPI(int pi){
       mPI = pi;
       mPIStr = PresetStation.parsePI(mPI);
+      mVersion++;
    }
 
    public void setRDSSupported(boolean rds){
       mRDSSupported = rds;
+      mVersion++;
+   }
+
+   /* True if the station changed since it was last persisted */
+   boolean isDirty(){
+      return (mVersion != mSavedVersion);
+   }
+
+   /* Read before the fields that get persisted */
+   int getVersion(){
+      return mVersion;
+   }
+
+   /* The fields as of version are persisted */
+   void markSaved(int version){
+      mSavedVersion = version;
+   }
+
+   void setOwner(PresetList owner){
+      mOwner = owner;
    }
 
    public String getName(){
@@ -153,6 +200,13 @@ public class PresetStation
    }
 
    public String getPtyString(){
+      String[] names = sPtyNames;
+      if (mPtyNames != names)
+      {
+         /* RDS standard changed since the name was resolved */
+         mPtyNames = names;
+         mPtyStr = lookupPty(names, mPty);
+      }
       return mPtyStr;
    }
 
@@ -168,10 +222,38 @@ public class PresetStation
       return mRDSSupported;
    }
 
+   /* Call signs by 16 bit PI code, filled in on first lookup of each code.
+    * Racing fills are harmless: both threads store an equal, interned
+    * String.
+    */
+   private static final int PI_CODE_COUNT = 0x10000;
+   private static String[] sCallSigns;
+
    /** Routine parses the PI Code from Integer to Call Sign String
     *  Example: 0x54A6 -> KZZY
     */
    public static String parsePI(int piCode)
+   {
+      if ((piCode < 0) || (piCode >= PI_CODE_COUNT))
+      {
+         return computeCallSign(piCode);
+      }
+      String[] callSigns = sCallSigns;
+      if (callSigns == null)
+      {
+         callSigns = new String[PI_CODE_COUNT];
+         sCallSigns = callSigns;
+      }
+      String callSign = callSigns[piCode];
+      if (callSign == null)
+      {
+         callSign = computeCallSign(piCode).intern();
+         callSigns[piCode] = callSign;
+      }
+      return callSign;
+   }
+
+   private static String computeCallSign(int piCode)
    {
       String callSign = "";
       if ( (piCode >> 8) == 0xAF)
@@ -610,22 +692,121 @@ public class PresetStation
       return callSign;
    }
 
-   /**
-    *  Get the Text String for the Program type Code
+   /* RBDS (North America) program types, indexed by PTY code */
+   private static final String[] RBDS_PTY_NAMES = {
+      /*  0 */ "",
+      /*  1 */ "News",
+      /*  2 */ "Information",
+      /*  3 */ "Sports",
+      /*  4 */ "Talk",
+      /*  5 */ "Rock",
+      /*  6 */ "Classic Rock",
+      /*  7 */ "Adult Hits",
+      /*  8 */ "Soft Rock",
+      /*  9 */ "Top 40",
+      /* 10 */ "Country",
+      /* 11 */ "Oldies",
+      /* 12 */ "Soft",
+      /* 13 */ "Nostalgia",
+      /* 14 */ "Jazz",
+      /* 15 */ "Classical",
+      /* 16 */ "Rhythm and Blues",
+      /* 17 */ "Soft Rhythm and Blues",
+      /* 18 */ "Foreign Language",
+      /* 19 */ "Religious Music",
+      /* 20 */ "Religious Talk",
+      /* 21 */ "Personality",
+      /* 22 */ "Public",
+      /* 23 */ "College",
+      /* 24 */ "",
+      /* 25 */ "",
+      /* 26 */ "",
+      /* 27 */ "",
+      /* 28 */ "",
+      /* 29 */ "Weather",
+      /* 30 */ "Emergency Test",
+      /* 31 */ "Emergency"
+   };
+
+   /* RDS (Europe) program types, indexed by PTY code */
+   private static final String[] RDS_PTY_NAMES = {
+      /*  0 */ "",
+      /*  1 */ "News",
+      /*  2 */ "Current Affairs",
+      /*  3 */ "Information",
+      /*  4 */ "Sport",
+      /*  5 */ "Education",
+      /*  6 */ "Drama",
+      /*  7 */ "Culture",
+      /*  8 */ "Science",
+      /*  9 */ "Varied",
+      /* 10 */ "Pop Music",
+      /* 11 */ "Rock Music",
+      /* 12 */ "Easy Listening Music",
+      /* 13 */ "Light classical",
+      /* 14 */ "Serious classical",
+      /* 15 */ "Other Music",
+      /* 16 */ "Weather",
+      /* 17 */ "Finance",
+      /* 18 */ "Children programs",
+      /* 19 */ "Social Affairs",
+      /* 20 */ "Religion",
+      /* 21 */ "Phone In",
+      /* 22 */ "Travel",
+      /* 23 */ "Leisure",
+      /* 24 */ "Jazz Music",
+      /* 25 */ "Country Music",
+      /* 26 */ "National Music",
+      /* 27 */ "Oldies Music",
+      /* 28 */ "Folk Music",
+      /* 29 */ "Documentary",
+      /* 30 */ "Emergency Test",
+      /* 31 */ "Emergency"
+   };
+
+   private static final String[] NO_PTY_NAMES = new String[RBDS_PTY_NAMES.length];
+   static
+   {
+      Arrays.fill(NO_PTY_NAMES, "");
+   }
+
+   /* Table for the RDS standard in use, switched by setPtyStandard() */
+   private static volatile String[] sPtyNames = NO_PTY_NAMES;
+
+   /** Select the PTY names matching the RDS standard, called whenever the
+    *  configured standard changes.
     */
-   public static String parsePTY(int pty)
+   public static void setPtyStandard(int rdsStd)
    {
-      String ptyStr="";
-      int rdsStd = FmSharedPreferences.getFMConfiguration().getRdsStd();
       if(rdsStd ==  FmReceiver.FM_RDS_STD_RBDS)
       {
-         ptyStr = getRBDSPtyString(pty);
+         sPtyNames = RBDS_PTY_NAMES;
       }
       else if(rdsStd ==  FmReceiver.FM_RDS_STD_RDS)
       {
-         ptyStr = getRDSPtyString(pty);
+         sPtyNames = RDS_PTY_NAMES;
+      }
+      else
+      {
+         sPtyNames = NO_PTY_NAMES;
       }
-      return (ptyStr);
+   }
+
+   private static String lookupPty(String[] names, int pty)
+   {
+      if ((pty < 0) || (pty >= names.length))
+      {
+         return "";
+      }
+      return names[pty];
+   }
+
+   /**
+    *  Get the Text String for the Program type Code
+    */
+   public static String parsePTY(int pty)
+   {
+      return lookupPty(sPtyNames, pty);
    }
 
    /**
@@ -633,319 +814,12 @@ public class PresetStation
     */
    public static String getRBDSPtyString(int pty)
    {
-      String ptyStr = "";
-      switch (pty)
-      {
-         case 1:
-         {
-            ptyStr = "News";
-            break;
-         }
-         case 2:
-         {
-            ptyStr = "Information";
-            break;
-         }
-         case 3:
-         {
-            ptyStr = "Sports";
-            break;
-         }
-         case 4:
-         {
-            ptyStr = "Talk";
-            break;
-         }
-         case 5:
-         {
-            ptyStr = "Rock";
-            break;
-         }
-         case 6:
-         {
-            ptyStr = "Classic Rock";
-            break;
-         }
-         case 7:
-         {
-            ptyStr = "Adult Hits";
-            break;
-         }
-         case 8:
-         {
-            ptyStr = "Soft Rock";
-            break;
-         }
-         case 9:
-         {
-            ptyStr = "Top 40";
-            break;
-         }
-         case 10:
-         {
-            ptyStr = "Country";
-            break;
-         }
-         case 11:
-         {
-            ptyStr = "Oldies";
-            break;
-         }
-         case 12:
-         {
-            ptyStr = "Soft";
-            break;
-         }
-         case 13:
-         {
-            ptyStr = "Nostalgia";
-            break;
-         }
-         case 14:
-         {
-            ptyStr = "Jazz";
-            break;
-         }
-         case 15:
-         {
-            ptyStr = "Classical";
-            break;
-         }
-         case 16:
-         {
-            ptyStr = "Rhythm and Blues";
-            break;
-         }
-         case 17:
-         {
-            ptyStr = "Soft Rhythm and Blues";
-            break;
-         }
-         case 18:
-         {
-            ptyStr = "Foreign Language";
-            break;
-         }
-         case 19:
-         {
-            ptyStr = "Religious Music";
-            break;
-         }
-         case 20:
-         {
-            ptyStr = "Religious Talk";
-            break;
-         }
-         case 21:
-         {
-            ptyStr = "Personality";
-            break;
-         }
-         case 22:
-         {
-            ptyStr = "Public";
-            break;
-         }
-         case 23:
-         {
-            ptyStr = "College";
-            break;
-         }
-         case 29:
-         {
-            ptyStr = "Weather";
-            break;
-         }
-         case 30:
-         {
-            ptyStr = "Emergency Test";
-            break;
-         }
-         case 31:
-         {
-            ptyStr = "Emergency";
-            break;
-         }
-         default:
-         {
-            ptyStr = "";
-            //Log.e(FMRadio.LOGTAG, "Unknown RBDS ProgramType [" + pty + "]");
-            break;
-         }
-      }
-      return ptyStr;
+      return lookupPty(RBDS_PTY_NAMES, pty);
    }
 
    /** get the Text String for the Program type Code */
    public static String getRDSPtyString(int pty)
    {
-      String ptyStr = "";
-      switch (pty)
-      {
-         case 1:
-         {
-            ptyStr = "News";
-            break;
-         }
-         case 2:
-         {
-            ptyStr = "Current Affairs";
-            break;
-         }
-         case 3:
-         {
-            ptyStr = "Information";
-            break;
-         }
-         case 4:
-         {
-            ptyStr = "Sport";
-            break;
-         }
-         case 5:
-         {
-            ptyStr = "Education";
-            break;
-         }
-         case 6:
-         {
-            ptyStr = "Drama";
-            break;
-         }
-         case 7:
-         {
-            ptyStr = "Culture";
-            break;
-         }
-         case 8:
-         {
-            ptyStr = "Science";
-            break;
-         }
-         case 9:
-         {
-            ptyStr = "Varied";
-            break;
-         }
-         case 10:
-         {
-            ptyStr = "Pop Music";
-            break;
-         }
-         case 11:
-         {
-            ptyStr = "Rock Music";
-            break;
-         }
-         case 12:
-         {
-            ptyStr = "Easy Listening Music";
-            break;
-         }
-         case 13:
-         {
-            ptyStr = "Light classical";
-            break;
-         }
-         case 14:
-         {
-            ptyStr = "Serious classical";
-            break;
-         }
-         case 15:
-         {
-            ptyStr = "Other Music";
-            break;
-         }
-         case 16:
-         {
-            ptyStr = "Weather";
-            break;
-         }
-         case 17:
-         {
-            ptyStr = "Finance";
-            break;
-         }
-         case 18:
-         {
-            ptyStr = "Children programs";
-            break;
-         }
-         case 19:
-         {
-            ptyStr = "Social Affairs";
-            break;
-         }
-         case 20:
-         {
-            ptyStr = "Religion";
-            break;
-         }
-         case 21:
-         {
-            ptyStr = "Phone In";
-            break;
-         }
-         case 22:
-         {
-            ptyStr = "Travel";
-            break;
-         }
-         case 23:
-         {
-            ptyStr = "Leisure";
-            break;
-         }
-         case 24:
-         {
-            ptyStr = "Jazz Music";
-            break;
-         }
-         case 25:
-         {
-            ptyStr = "Country Music";
-            break;
-         }
-         case 26:
-         {
-            ptyStr = "National Music";
-            break;
-         }
-         case 27:
-         {
-            ptyStr = "Oldies Music";
-            break;
-         }
-         case 28:
-         {
-            ptyStr = "Folk Music";
-            break;
-         }
-         case 29:
-         {
-            ptyStr = "Documentary";
-            break;
-         }
-         case 30:
-         {
-            ptyStr = "Emergency Test";
-            break;
-         }
-         case 31:
-         {
-            ptyStr = "Emergency";
-            break;
-         }
-         default:
-         {
-            ptyStr = "";
-            //Log.e(FMRadio.LOGTAG, "Unknown RDS ProgramType [" + pty + "]");
-            break;
-         }
-      }
-      return ptyStr;
+      return lookupPty(RDS_PTY_NAMES, pty);
    }
-
-
 }
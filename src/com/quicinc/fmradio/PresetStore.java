@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2012, Code Aurora Forum. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *        * Redistributions of source code must retain the above copyright
+ *            notice, this list of conditions and the following disclaimer.
+ *        * Redistributions in binary form must reproduce the above copyright
+ *            notice, this list of conditions and the following disclaimer in the
+ *            documentation and/or other materials provided with the distribution.
+ *        * Neither the name of Code Aurora nor
+ *            the names of its contributors may be used to endorse or promote
+ *            products derived from this software without specific prior written
+ *            permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NON-INFRINGEMENT ARE DISCLAIMED.    IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.quicinc.fmradio;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import android.content.Context;
+import android.util.Log;
+
+/*
+ * Binary store for the preset lists and the FM configuration.
+ *
+ * File layout (big endian):
+ *   int   MAGIC
+ *   int   VERSION
+ *   int   tuned frequency, list index, country, record duration, AF switch
+ *   int   number of lists
+ *   per list, as produced by PresetList.encode():
+ *     int    record size in bytes, not counting this field
+ *     string list name
+ *     int    number of stations
+ *     per station: int frequency, int PI, int PTY, byte RDS, string name
+ *
+ * Strings are an int char count followed by UTF-16 chars, so they can be
+ * read back without going through a charset decoder.
+ */
+public class PresetStore
+{
+   private static final String LOGTAG = FMRadio.LOGTAG;
+
+   private static final String STORE_FILE = "fmradio_presets.bin";
+   private static final String STORE_TMP_FILE = "fmradio_presets.bin.tmp";
+
+   public static final int MAGIC = 0x464D5053; /* "FMPS" */
+   public static final int VERSION = 1;
+   public static final int PREAMBLE_SIZE = 8;
+
+   private final File mFile;
+   private final File mTmpFile;
+
+   public PresetStore(Context context) {
+      File dir = context.getFilesDir();
+      mFile = new File(dir, STORE_FILE);
+      mTmpFile = new File(dir, STORE_TMP_FILE);
+   }
+
+   public boolean exists() {
+      return mFile.exists();
+   }
+
+   /** Maps the store read-only.
+    *  List records handed out as slices of the mapping stay in the page
+    *  cache instead of the heap until a list actually gets materialized.
+    *  Replacing the store renames a new file over it, so an existing
+    *  mapping keeps seeing the old, still consistent, contents.
+    *
+    * @return the contents positioned right after the magic and version,
+    *         or null if the store is missing, unreadable or of an
+    *         unknown version.
+    */
+   public ByteBuffer map() {
+      if (!mFile.exists())
+      {
+         return null;
+      }
+      FileInputStream in = null;
+      try
+      {
+         in = new FileInputStream(mFile);
+         FileChannel channel = in.getChannel();
+         long size = channel.size();
+         if ((size < PREAMBLE_SIZE) || (size > Integer.MAX_VALUE))
+         {
+            Log.e(LOGTAG, "PresetStore: bad size " + size);
+            return null;
+         }
+         ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+         if (!checkPreamble(buf))
+         {
+            return null;
+         }
+         return buf;
+      } catch (IOException e)
+      {
+         Log.e(LOGTAG, "PresetStore: map failed", e);
+         return null;
+      } finally
+      {
+         StoreFile.closeQuietly(in);
+      }
+   }
+
+   /** Replaces the store with the preamble followed by "records".
+    *  The data goes to a temporary file first which is then renamed over
+    *  the store, so a crash mid-write leaves the previous store intact.
+    *
+    * @return true if the store was written.
+    */
+   public boolean write(ByteBuffer[] records) {
+      ByteBuffer[] buffers = new ByteBuffer[records.length + 1];
+      ByteBuffer preamble = ByteBuffer.allocate(PREAMBLE_SIZE);
+      preamble.putInt(MAGIC);
+      preamble.putInt(VERSION);
+      preamble.flip();
+      buffers[0] = preamble;
+      System.arraycopy(records, 0, buffers, 1, records.length);
+      return StoreFile.writeAtomically(mFile, mTmpFile, buffers, "PresetStore");
+   }
+
+   public static boolean checkPreamble(ByteBuffer buf) {
+      if (buf.remaining() < PREAMBLE_SIZE)
+      {
+         return false;
+      }
+      int magic = buf.getInt();
+      int version = buf.getInt();
+      if ((magic != MAGIC) || (version != VERSION))
+      {
+         Log.e(LOGTAG, "PresetStore: unknown format " + Integer.toHexString(magic)
+                       + " v" + version);
+         return false;
+      }
+      return true;
+   }
+
+   public static int stringSize(String str) {
+      return 4 + (2 * str.length());
+   }
+
+   public static void putString(ByteBuffer buf, String str) {
+      int len = str.length();
+      buf.putInt(len);
+      for (int i = 0; i < len; i++)
+      {
+         buf.putChar(str.charAt(i));
+      }
+   }
+
+   public static String getString(ByteBuffer buf) {
+      int len = buf.getInt();
+      if (len == 0)
+      {
+         return "";
+      }
+      /* Checked before the allocation, a corrupt length must not OOM */
+      if ((len < 0) || (len > (buf.remaining() / 2)))
+      {
+         throw new IllegalArgumentException("Bad string length " + len);
+      }
+      char[] chars = new char[len];
+      buf.asCharBuffer().get(chars);
+      buf.position(buf.position() + (2 * len));
+      return new String(chars);
+   }
+}
@@ -0,0 +1,331 @@
+/*
+ * Copyright (c) 2012, Code Aurora Forum. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *        * Redistributions of source code must retain the above copyright
+ *            notice, this list of conditions and the following disclaimer.
+ *        * Redistributions in binary form must reproduce the above copyright
+ *            notice, this list of conditions and the following disclaimer in the
+ *            documentation and/or other materials provided with the distribution.
+ *        * Neither the name of Code Aurora nor
+ *            the names of its contributors may be used to endorse or promote
+ *            products derived from this software without specific prior written
+ *            permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NON-INFRINGEMENT ARE DISCLAIMED.    IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.quicinc.fmradio;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Message;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single consumer for FmReceiver commands. Requests from binder threads are
+ * executed one at a time, in arrival order, on a dedicated thread, so chip
+ * commands cannot interleave. A command queued with coalescing replaces any
+ * pending command of the same type (for example only the latest tune
+ * survives), and per-command latency from enqueue to completion is tracked.
+ * Synchronous callers wait a bounded time; a command that has not started
+ * by then is dropped and the caller gets its fallback.
+ */
+class RadioCommandQueue
+{
+   private static final String LOGTAG = "FMCommandQueue";
+
+   public static final int CMD_TUNE = 0;
+   public static final int CMD_SEEK = 1;
+   public static final int CMD_SCAN = 2;
+   public static final int CMD_SEARCH_LIST = 3;
+   public static final int CMD_SEEK_PI = 4;
+   public static final int CMD_CANCEL_SEARCH = 5;
+   public static final int CMD_POWER_MODE = 6;
+   public static final int CMD_SET_OPTION = 7;
+   public static final int CMD_QUERY = 8;
+   public static final int CMD_SWEEP = 9;
+   /* enable, disable and reset */
+   public static final int CMD_POWER = 10;
+   public static final int CMD_CONFIGURE = 11;
+   static final int CMD_COUNT = 12;
+   /* Message code for synchronous calls, which are never coalesced or cleared */
+   private static final int MSG_SYNC_CALL = CMD_COUNT;
+
+   private static final String[] CMD_NAMES = {
+      "tune", "seek", "scan", "searchList", "seekPI", "cancelSearch",
+      "powerMode", "setOption", "query", "sweep", "power", "configure"
+   };
+
+   /* Default wait of call(), chip commands normally answer in far less */
+   public static final int CALL_TIMEOUT_MS = 5000;
+
+   /* Layout of getStats() */
+   public static final int STAT_EXECUTED = 0;
+   public static final int STAT_COALESCED = 1;
+   public static final int STAT_AVG_LATENCY_MS = 2;
+   public static final int STAT_MAX_LATENCY_MS = 3;
+   public static final int STAT_TIMED_OUT = 4;
+   private static final int STAT_COUNT = 5;
+
+   private final HandlerThread mThread;
+   private final Handler mHandler;
+   private final Object mLock = new Object();
+   private boolean mQuit = false;
+
+   /* Metrics indexed by command type, guarded by mLock */
+   private final long[] mExecuted = new long[CMD_COUNT];
+   private final long[] mCoalesced = new long[CMD_COUNT];
+   private final long[] mTotalLatencyMs = new long[CMD_COUNT];
+   private final long[] mMaxLatencyMs = new long[CMD_COUNT];
+   private final long[] mTimedOut = new long[CMD_COUNT];
+
+   private static final class Pending
+   {
+      final int mType;
+      final Callable<?> mCommand;
+      final long mEnqueueTime;
+      final CountDownLatch mDone;
+      Object mResult;
+      /* Guarded by mLock: picked up by the command thread, or given up on
+       * by a caller whose wait expired
+       */
+      boolean mStarted;
+      boolean mAbandoned;
+
+      Pending(int type, Callable<?> command, boolean sync)
+      {
+         mType = type;
+         mCommand = command;
+         mEnqueueTime = SystemClock.uptimeMillis();
+         mDone = sync ? new CountDownLatch(1) : null;
+      }
+   }
+
+   RadioCommandQueue(String name)
+   {
+      mThread = new HandlerThread(name);
+      mThread.start();
+      mHandler = new Handler(mThread.getLooper())
+      {
+         @Override
+         public void handleMessage(Message msg)
+         {
+            execute((Pending) msg.obj);
+         }
+      };
+   }
+
+   /* Looper of the command thread, for handlers that must share it */
+   Looper getLooper()
+   {
+      return mThread.getLooper();
+   }
+
+   /**
+    * Queues a command behind all earlier ones without waiting for it.
+    * With coalesce set, a pending command of the same type is dropped
+    * in favour of this one.
+    *
+    * @return false if the queue has been shut down.
+    */
+   boolean post(int type, Callable<?> command, boolean coalesce)
+   {
+      Pending pending = new Pending(type, command, false);
+      synchronized (mLock)
+      {
+         if (mQuit)
+         {
+            return false;
+         }
+         if (coalesce && mHandler.hasMessages(type))
+         {
+            mHandler.removeMessages(type);
+            mCoalesced[type]++;
+         }
+         mHandler.sendMessage(mHandler.obtainMessage(type, pending));
+      }
+      return true;
+   }
+
+   <T> T call(int type, Callable<T> command, T fallback)
+   {
+      return call(type, command, fallback, CALL_TIMEOUT_MS);
+   }
+
+   /**
+    * Queues a command and blocks until the command thread has run it, for
+    * at most timeoutMs.
+    *
+    * @return the command result, or fallback if it failed, did not finish
+    *         within timeoutMs or the queue has been shut down. A command
+    *         that had not started when the wait expired is not run.
+    */
+   @SuppressWarnings("unchecked")
+   <T> T call(int type, Callable<T> command, T fallback, int timeoutMs)
+   {
+      Pending pending = new Pending(type, command, true);
+      if (Looper.myLooper() == mThread.getLooper())
+      {
+         /* Already on the command thread, queueing would deadlock */
+         execute(pending);
+      }
+      else
+      {
+         synchronized (mLock)
+         {
+            if (mQuit)
+            {
+               return fallback;
+            }
+            mHandler.sendMessage(mHandler.obtainMessage(MSG_SYNC_CALL, pending));
+         }
+         boolean done = false;
+         try
+         {
+            done = pending.mDone.await(timeoutMs, TimeUnit.MILLISECONDS);
+         }
+         catch (InterruptedException e)
+         {
+            Thread.currentThread().interrupt();
+         }
+         if (!done)
+         {
+            synchronized (mLock)
+            {
+               pending.mAbandoned = !pending.mStarted;
+               mTimedOut[type]++;
+            }
+            Log.e(LOGTAG, CMD_NAMES[type] + " gave up after " + timeoutMs + "ms"
+                          + (pending.mAbandoned ? ", dropped" : ", still running"));
+            return fallback;
+         }
+      }
+      return (pending.mResult != null) ? (T) pending.mResult : fallback;
+   }
+
+   /* Drops every queued command that nobody is waiting on */
+   void clear()
+   {
+      synchronized (mLock)
+      {
+         for (int type = 0; type < CMD_COUNT; type++)
+         {
+            mHandler.removeMessages(type);
+         }
+      }
+   }
+
+   void quit()
+   {
+      synchronized (mLock)
+      {
+         mQuit = true;
+      }
+      /* Let queued synchronous callers go before the looper stops */
+      mHandler.post(new Runnable()
+      {
+         public void run()
+         {
+            mThread.quit();
+         }
+      });
+   }
+
+   private void execute(Pending pending)
+   {
+      synchronized (mLock)
+      {
+         if (pending.mAbandoned)
+         {
+            return;
+         }
+         pending.mStarted = true;
+      }
+      try
+      {
+         pending.mResult = pending.mCommand.call();
+      }
+      catch (Exception e)
+      {
+         Log.e(LOGTAG, CMD_NAMES[pending.mType] + " failed: " + e);
+      }
+      long latency = SystemClock.uptimeMillis() - pending.mEnqueueTime;
+      synchronized (mLock)
+      {
+         mExecuted[pending.mType]++;
+         mTotalLatencyMs[pending.mType] += latency;
+         if (latency > mMaxLatencyMs[pending.mType])
+         {
+            mMaxLatencyMs[pending.mType] = latency;
+         }
+      }
+      if (pending.mDone != null)
+      {
+         pending.mDone.countDown();
+      }
+   }
+
+   /* Counters of one command type, indexed by the STAT_* constants */
+   long[] getStats(int type)
+   {
+      long[] stats = new long[STAT_COUNT];
+      if ((type < 0) || (type >= CMD_COUNT))
+      {
+         return stats;
+      }
+      synchronized (mLock)
+      {
+         stats[STAT_EXECUTED] = mExecuted[type];
+         stats[STAT_COALESCED] = mCoalesced[type];
+         stats[STAT_AVG_LATENCY_MS] = getAverageLatencyMs(type);
+         stats[STAT_MAX_LATENCY_MS] = mMaxLatencyMs[type];
+         stats[STAT_TIMED_OUT] = mTimedOut[type];
+      }
+      return stats;
+   }
+
+   /* Must hold mLock */
+   private long getAverageLatencyMs(int type)
+   {
+      return (mExecuted[type] == 0) ? 0 : mTotalLatencyMs[type] / mExecuted[type];
+   }
+
+   /* Latency (enqueue to completion) and coalescing per command type */
+   void logStats()
+   {
+      synchronized (mLock)
+      {
+         for (int type = 0; type < CMD_COUNT; type++)
+         {
+            if ((mExecuted[type] == 0) && (mCoalesced[type] == 0)
+                && (mTimedOut[type] == 0))
+            {
+               continue;
+            }
+            Log.d(LOGTAG, CMD_NAMES[type] + ": executed " + mExecuted[type]
+                          + " coalesced " + mCoalesced[type]
+                          + " avg " + getAverageLatencyMs(type) + "ms"
+                          + " max " + mMaxLatencyMs[type] + "ms"
+                          + " timed out " + mTimedOut[type]);
+         }
+      }
+   }
+}
@@ -0,0 +1,298 @@
+/*
+ * Copyright (c) 2012, Code Aurora Forum. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *        * Redistributions of source code must retain the above copyright
+ *            notice, this list of conditions and the following disclaimer.
+ *        * Redistributions in binary form must reproduce the above copyright
+ *            notice, this list of conditions and the following disclaimer in the
+ *            documentation and/or other materials provided with the distribution.
+ *        * Neither the name of Code Aurora nor
+ *            the names of its contributors may be used to endorse or promote
+ *            products derived from this software without specific prior written
+ *            permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NON-INFRINGEMENT ARE DISCLAIMED.    IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.quicinc.fmradio;
+
+import android.os.RemoteException;
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Samples the signal metrics of the tuned station at a fixed rate on its
+ * own scheduled thread. Ticks are scheduled at a fixed rate, so a slow read
+ * does not shift the following ones. Every sample is stored in a
+ * StatsResults ring, and the last STATS_WINDOW samples of each metric feed
+ * rolling min, max, mean and percentile figures. RSSI, IoC, IntDet and
+ * SINR come from the service signal stream once it has reported on the
+ * current channel, only the missing metrics are read over binder.
+ */
+class SignalSampler
+{
+   private static final String LOGTAG = "FMSignalSampler";
+
+   public static final int METRIC_RSSI = 0;
+   public static final int METRIC_IOC = 1;
+   public static final int METRIC_INTDET = 2;
+   /* SINR on SMD transport, MpxDcc otherwise */
+   public static final int METRIC_SINR = 3;
+   static final int METRIC_COUNT = 4;
+   private static final String[] METRIC_NAMES = {
+      "RSSI", "IoC", "IntDet", "SINR"
+   };
+
+   public static final int STATS_WINDOW = 1024;
+   public static final int MAX_RATE_HZ = 100;
+
+   public interface Listener {
+      /* Called on the sampler thread for every stored sample */
+      void onSample(int seq);
+      /* Called on the sampler thread once the duration has elapsed */
+      void onSamplingDone();
+   }
+
+   /*
+    * Latest values pushed through onSignalStrengthChanged(). The service
+    * only reports changes, so the values hold until the next retune, which
+    * invalidates them.
+    */
+   static final class Stream {
+      private boolean mValid = false;
+      private int mRssi;
+      private int mSinr;
+      private int mIoC;
+      private int mIntDet;
+
+      public synchronized void update(int rssi, int sinr, int ioc, int intDet) {
+         mValid = true;
+         mRssi = rssi;
+         mSinr = sinr;
+         mIoC = ioc;
+         mIntDet = intDet;
+      }
+
+      public synchronized void invalidate() {
+         mValid = false;
+      }
+
+      /* Copies rssi, ioc, intDet and sinr into out, false if not valid */
+      public synchronized boolean read(int[] out) {
+         if (!mValid) {
+            return false;
+         }
+         out[METRIC_RSSI] = mRssi;
+         out[METRIC_IOC] = mIoC;
+         out[METRIC_INTDET] = mIntDet;
+         out[METRIC_SINR] = mSinr;
+         return true;
+      }
+   }
+
+   private final IFMRadioService mService;
+   private final Stream mStream;
+   private final StatsResults mResults;
+   private final boolean mUseSinr;
+   private final Listener mListener;
+
+   private ScheduledExecutorService mExecutor;
+   private int mRemaining;
+
+   /* Rolling window per metric, guarded by this */
+   private final int[][] mWindow = new int[METRIC_COUNT][STATS_WINDOW];
+   private final long[] mSum = new long[METRIC_COUNT];
+   private final int[] mScratch = new int[STATS_WINDOW];
+   /* Only touched on the sampler thread */
+   private final int[] mStreamed = new int[METRIC_COUNT];
+   private int mWindowPos = 0;
+   private int mWindowCount = 0;
+   private long mTotal = 0;
+
+   SignalSampler(IFMRadioService service, Stream stream, StatsResults results,
+                 boolean useSinr, Listener listener) {
+      mService = service;
+      mStream = stream;
+      mResults = results;
+      mUseSinr = useSinr;
+      mListener = listener;
+   }
+
+   /* Starts sampling at rateHz for durationSecs, 0 samples until stop() */
+   public synchronized boolean start(int rateHz, int durationSecs) {
+      if ((mExecutor != null) || (rateHz <= 0)) {
+         return false;
+      }
+      rateHz = Math.min(rateHz, MAX_RATE_HZ);
+      mRemaining = (durationSecs > 0) ? (rateHz * durationSecs) : -1;
+      mWindowPos = 0;
+      mWindowCount = 0;
+      mTotal = 0;
+      Arrays.fill(mSum, 0);
+      mExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+         public Thread newThread(Runnable r) {
+            return new Thread(r, "FMSignalSampler");
+         }
+      });
+      long periodUs = 1000000L / rateHz;
+      Log.d(LOGTAG, "start: " + rateHz + "Hz for "
+                    + ((durationSecs > 0) ? (durationSecs + "s") : "ever"));
+      mExecutor.scheduleAtFixedRate(mTick, 0, periodUs, TimeUnit.MICROSECONDS);
+      return true;
+   }
+
+   public synchronized void stop() {
+      if (mExecutor != null) {
+         mExecutor.shutdownNow();
+         mExecutor = null;
+      }
+   }
+
+   public synchronized boolean isRunning() {
+      return mExecutor != null;
+   }
+
+   private final Runnable mTick = new Runnable() {
+      public void run() {
+         boolean done;
+         synchronized (SignalSampler.this) {
+            if (mExecutor == null) {
+               return;
+            }
+            if (mRemaining > 0) {
+               mRemaining--;
+            }
+            done = (mRemaining == 0);
+         }
+         mListener.onSample(sample());
+         if (done) {
+            stop();
+            mListener.onSamplingDone();
+         }
+      }
+   };
+
+   private int sample() {
+      int rssi = 0, ioc = 0, intDet = 0, mpxDcc = 0, sinr = 0;
+      boolean streamed = mStream.read(mStreamed);
+      try {
+         if (streamed) {
+            rssi = mStreamed[METRIC_RSSI];
+            ioc = mStreamed[METRIC_IOC];
+            intDet = mStreamed[METRIC_INTDET];
+            sinr = mUseSinr ? mStreamed[METRIC_SINR] : 0;
+         } else {
+            rssi = (byte) mService.getRssi();
+            ioc = mService.getIoC();
+            intDet = mService.getIntDet();
+            if (mUseSinr) {
+               sinr = (byte) mService.getSINR();
+            }
+         }
+         if (!mUseSinr) {
+            /* Not part of the stream */
+            mpxDcc = mService.getMpxDcc();
+         }
+      } catch (RemoteException e) {
+         e.printStackTrace();
+      }
+      synchronized (this) {
+         push(METRIC_RSSI, rssi);
+         push(METRIC_IOC, ioc);
+         push(METRIC_INTDET, intDet);
+         push(METRIC_SINR, mUseSinr ? sinr : mpxDcc);
+         mWindowPos = (mWindowPos + 1) % STATS_WINDOW;
+         if (mWindowCount < STATS_WINDOW) {
+            mWindowCount++;
+         }
+         mTotal++;
+      }
+      return mResults.add(FmSharedPreferences.getTunedFrequency(), rssi, ioc,
+                          intDet, mpxDcc, sinr);
+   }
+
+   private void push(int metric, int value) {
+      int[] window = mWindow[metric];
+      if (mWindowCount == STATS_WINDOW) {
+         mSum[metric] -= window[mWindowPos];
+      }
+      window[mWindowPos] = value;
+      mSum[metric] += value;
+   }
+
+   /* Number of samples the rolling figures are computed over */
+   public synchronized int getWindowCount() {
+      return mWindowCount;
+   }
+
+   public synchronized long getSampleCount() {
+      return mTotal;
+   }
+
+   public synchronized int getMin(int metric) {
+      int[] window = mWindow[metric];
+      int min = Integer.MAX_VALUE;
+      for (int i = 0; i < mWindowCount; i++) {
+         min = Math.min(min, window[i]);
+      }
+      return (mWindowCount > 0) ? min : 0;
+   }
+
+   public synchronized int getMax(int metric) {
+      int[] window = mWindow[metric];
+      int max = Integer.MIN_VALUE;
+      for (int i = 0; i < mWindowCount; i++) {
+         max = Math.max(max, window[i]);
+      }
+      return (mWindowCount > 0) ? max : 0;
+   }
+
+   public synchronized float getMean(int metric) {
+      return (mWindowCount > 0) ? ((float) mSum[metric] / mWindowCount) : 0f;
+   }
+
+   /* Nearest-rank percentile, pct in 0..100 */
+   public synchronized int getPercentile(int metric, int pct) {
+      if (mWindowCount == 0) {
+         return 0;
+      }
+      System.arraycopy(mWindow[metric], 0, mScratch, 0, mWindowCount);
+      Arrays.sort(mScratch, 0, mWindowCount);
+      int rank = (pct * mWindowCount + 99) / 100;
+      return mScratch[Math.max(0, Math.min(mWindowCount - 1, rank - 1))];
+   }
+
+   /* One line per metric: name, min, max, mean, p50, p90 and p99 */
+   public synchronized void appendSummary(StringBuilder sb) {
+      sb.append("samples: ").append(mTotal).append(", window: ")
+        .append(mWindowCount).append("\r\n");
+      for (int metric = 0; metric < METRIC_COUNT; metric++) {
+         String name = ((metric == METRIC_SINR) && !mUseSinr)
+                       ? "Offset" : METRIC_NAMES[metric];
+         sb.append(name).append(" min ").append(getMin(metric))
+           .append(" max ").append(getMax(metric))
+           .append(" mean ").append(getMean(metric))
+           .append(" p50 ").append(getPercentile(metric, 50))
+           .append(" p90 ").append(getPercentile(metric, 90))
+           .append(" p99 ").append(getPercentile(metric, 99))
+           .append("\r\n");
+      }
+   }
+}
@@ -0,0 +1,457 @@
+/*
+ * Copyright (c) 2012, Code Aurora Forum. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *        * Redistributions of source code must retain the above copyright
+ *            notice, this list of conditions and the following disclaimer.
+ *        * Redistributions in binary form must reproduce the above copyright
+ *            notice, this list of conditions and the following disclaimer in the
+ *            documentation and/or other materials provided with the distribution.
+ *        * Neither the name of Code Aurora nor
+ *            the names of its contributors may be used to endorse or promote
+ *            products derived from this software without specific prior written
+ *            permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NON-INFRINGEMENT ARE DISCLAIMED.    IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.quicinc.fmradio;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+
+/*
+ * Persistent map of the stations found per regional band, so auto-presets
+ * can be filled without waiting for a full band search.
+ *
+ * A band is keyed by country (FmSharedPreferences.getCountry()) and channel
+ * spacing. For every channel it records the last RSSI, PI and PTY seen, its
+ * rank in the last strong-station search (-1 if it was not found) and when
+ * it was last seen. Search results older than MAX_SEARCH_AGE_MS are not
+ * handed out and channels not seen for MAX_CHANNEL_AGE_MS are dropped.
+ *
+ * The file is read and written on its own thread. Until it has been read
+ * the map answers as if it were empty, and what is recorded meanwhile wins
+ * over what the file holds.
+ *
+ * File layout (big endian):
+ *   int   MAGIC
+ *   int   VERSION
+ *   int   number of bands
+ *   per band:
+ *     int   country, int spacing, long search time, int number of channels
+ *     per channel: int frequency, int RSSI, int PI, int PTY, int rank,
+ *                  long last seen
+ */
+public class StationMapCache
+{
+   private static final String LOGTAG = FMRadio.LOGTAG;
+
+   private static final String CACHE_FILE = "fmradio_stationmap.bin";
+   private static final String CACHE_TMP_FILE = "fmradio_stationmap.bin.tmp";
+
+   public static final int MAGIC = 0x464D534D; /* "FMSM" */
+   public static final int VERSION = 1;
+   private static final int BAND_HEADER_SIZE = 20;
+   private static final int CHANNEL_SIZE = 28;
+
+   public static final long MAX_SEARCH_AGE_MS = 24L * 60 * 60 * 1000;
+   /* A search younger than this is not refreshed in the background */
+   public static final long REFRESH_AGE_MS = 60L * 60 * 1000;
+   public static final long MAX_CHANNEL_AGE_MS = 30L * 24 * 60 * 60 * 1000;
+
+   private static class Channel {
+      int freq;
+      int rssi;
+      int pi;
+      int pty;
+      int rank = -1;
+      long lastSeen;
+   }
+
+   private static class Band {
+      int country;
+      int spacing;
+      long searchTime;
+      final ArrayList<Channel> channels = new ArrayList<Channel>();
+
+      Channel find(int freq) {
+         for (Channel channel : channels)
+         {
+            if (channel.freq == freq)
+            {
+               return channel;
+            }
+         }
+         return null;
+      }
+   }
+
+   private static final Comparator<Channel> RANK_ORDER = new Comparator<Channel>() {
+      public int compare(Channel a, Channel b) {
+         return a.rank - b.rank;
+      }
+   };
+
+   private final File mFile;
+   private final File mTmpFile;
+   private final ArrayList<Band> mBands = new ArrayList<Band>();
+   private boolean mDirty = false;
+   private final HandlerThread mIoThread;
+   private final Handler mIoHandler;
+
+   public StationMapCache(Context context) {
+      File dir = context.getFilesDir();
+      mFile = new File(dir, CACHE_FILE);
+      mTmpFile = new File(dir, CACHE_TMP_FILE);
+      mIoThread = new HandlerThread("FmStationMapIO");
+      mIoThread.start();
+      mIoHandler = new Handler(mIoThread.getLooper());
+      mIoHandler.post(mLoad);
+   }
+
+   /** Returns true if the band was searched less than REFRESH_AGE_MS ago */
+   public synchronized boolean isSearchFresh(int country, int spacing) {
+      Band band = getBand(country, spacing, false);
+      long now = System.currentTimeMillis();
+      return (band != null) && (now >= band.searchTime)
+             && (now - band.searchTime < REFRESH_AGE_MS);
+   }
+
+   /** Returns the stations of the last strong-station search of the band,
+    *  strongest first, or null if the band was never searched or the
+    *  search is older than MAX_SEARCH_AGE_MS.
+    */
+   public synchronized int[] getStrongStations(int country, int spacing, int max) {
+      Band band = getBand(country, spacing, false);
+      long now = System.currentTimeMillis();
+      if ((band == null) || (now - band.searchTime > MAX_SEARCH_AGE_MS)
+          || (now < band.searchTime))
+      {
+         return null;
+      }
+      ArrayList<Channel> ranked = new ArrayList<Channel>();
+      for (Channel channel : band.channels)
+      {
+         if (channel.rank >= 0)
+         {
+            ranked.add(channel);
+         }
+      }
+      if (ranked.isEmpty())
+      {
+         return null;
+      }
+      Collections.sort(ranked, RANK_ORDER);
+      int count = Math.min(max, ranked.size());
+      int[] freqs = new int[count];
+      for (int i = 0; i < count; i++)
+      {
+         freqs[i] = ranked.get(i).freq;
+      }
+      return freqs;
+   }
+
+   /** Records the result of a strong-station search, strongest first.
+    *  A frequency of 0 ends the list.
+    */
+   public synchronized void putSearchResults(int country, int spacing, int[] freqs) {
+      Band band = getBand(country, spacing, true);
+      long now = System.currentTimeMillis();
+      for (Channel channel : band.channels)
+      {
+         channel.rank = -1;
+      }
+      for (int i = 0; i < freqs.length; i++)
+      {
+         if (freqs[i] == 0)
+         {
+            break;
+         }
+         Channel channel = getChannel(band, freqs[i]);
+         channel.rank = i;
+         channel.lastSeen = now;
+      }
+      band.searchTime = now;
+      mDirty = true;
+   }
+
+   /** Records what was received on a channel while it was tuned */
+   public synchronized void updateChannel(int country, int spacing, int freq,
+                                          int rssi, int pi, int pty) {
+      Channel channel = getChannel(getBand(country, spacing, true), freq);
+      if ((channel.rssi != rssi) || (channel.pi != pi) || (channel.pty != pty))
+      {
+         channel.rssi = rssi;
+         channel.pi = pi;
+         channel.pty = pty;
+         channel.lastSeen = System.currentTimeMillis();
+         mDirty = true;
+      }
+   }
+
+   /** Returns the last PI seen on the channel, 0 if unknown */
+   public synchronized int getPI(int country, int spacing, int freq) {
+      Band band = getBand(country, spacing, false);
+      Channel channel = (band == null) ? null : band.find(freq);
+      return (channel == null) ? 0 : channel.pi;
+   }
+
+   /** Returns the last PTY seen on the channel, 0 if unknown */
+   public synchronized int getPty(int country, int spacing, int freq) {
+      Band band = getBand(country, spacing, false);
+      Channel channel = (band == null) ? null : band.find(freq);
+      return (channel == null) ? 0 : channel.pty;
+   }
+
+   private Band getBand(int country, int spacing, boolean create) {
+      for (Band band : mBands)
+      {
+         if ((band.country == country) && (band.spacing == spacing))
+         {
+            return band;
+         }
+      }
+      if (!create)
+      {
+         return null;
+      }
+      Band band = new Band();
+      band.country = country;
+      band.spacing = spacing;
+      mBands.add(band);
+      return band;
+   }
+
+   private static Channel getChannel(Band band, int freq) {
+      Channel channel = band.find(freq);
+      if (channel == null)
+      {
+         channel = new Channel();
+         channel.freq = freq;
+         band.channels.add(channel);
+      }
+      return channel;
+   }
+
+   private final Runnable mLoad = new Runnable() {
+      public void run() {
+         ArrayList<Band> bands = new ArrayList<Band>();
+         boolean dropped = load(bands);
+         synchronized (StationMapCache.this)
+         {
+            merge(bands);
+            mDirty |= dropped;
+         }
+      }
+   };
+
+   private final Runnable mSave = new Runnable() {
+      public void run() {
+         ByteBuffer buf;
+         synchronized (StationMapCache.this)
+         {
+            if (!mDirty)
+            {
+               return;
+            }
+            buf = encode();
+            mDirty = false;
+         }
+         if (!write(buf))
+         {
+            synchronized (StationMapCache.this)
+            {
+               mDirty = true;
+            }
+         }
+      }
+   };
+
+   /* Reads the cache file into bands, dropping channels that went stale.
+    * Returns true if any channel was dropped.
+    */
+   private boolean load(ArrayList<Band> bands) {
+      boolean dropped = false;
+      if (!mFile.exists())
+      {
+         return false;
+      }
+      FileInputStream in = null;
+      try
+      {
+         in = new FileInputStream(mFile);
+         FileChannel channel = in.getChannel();
+         long size = channel.size();
+         if ((size < 12) || (size > Integer.MAX_VALUE))
+         {
+            Log.e(LOGTAG, "StationMapCache: bad size " + size);
+            return false;
+         }
+         ByteBuffer buf = ByteBuffer.allocate((int) size);
+         while (buf.hasRemaining() && (channel.read(buf) >= 0))
+         {
+         }
+         buf.flip();
+         if ((buf.getInt() != MAGIC) || (buf.getInt() != VERSION))
+         {
+            Log.e(LOGTAG, "StationMapCache: unknown format");
+            return false;
+         }
+         long now = System.currentTimeMillis();
+         int count = buf.getInt();
+         for (int b = 0; b < count; b++)
+         {
+            Band band = new Band();
+            band.country = buf.getInt();
+            band.spacing = buf.getInt();
+            band.searchTime = buf.getLong();
+            int channels = buf.getInt();
+            for (int c = 0; c < channels; c++)
+            {
+               Channel ch = new Channel();
+               ch.freq = buf.getInt();
+               ch.rssi = buf.getInt();
+               ch.pi = buf.getInt();
+               ch.pty = buf.getInt();
+               ch.rank = buf.getInt();
+               ch.lastSeen = buf.getLong();
+               if ((now - ch.lastSeen) <= MAX_CHANNEL_AGE_MS)
+               {
+                  band.channels.add(ch);
+               } else
+               {
+                  dropped = true;
+               }
+            }
+            bands.add(band);
+         }
+      } catch (IOException e)
+      {
+         Log.e(LOGTAG, "StationMapCache: load failed", e);
+      } catch (RuntimeException e)
+      {
+         /* Truncated or corrupt file: start from an empty map */
+         Log.e(LOGTAG, "StationMapCache: corrupt cache", e);
+         bands.clear();
+      } finally
+      {
+         StoreFile.closeQuietly(in);
+      }
+      return dropped;
+   }
+
+   /* Adds what was read from the file, keeping what was recorded since */
+   private void merge(ArrayList<Band> loaded) {
+      for (Band from : loaded)
+      {
+         Band band = getBand(from.country, from.spacing, false);
+         if (band == null)
+         {
+            mBands.add(from);
+            continue;
+         }
+         boolean searched = (band.searchTime != 0);
+         if (!searched)
+         {
+            band.searchTime = from.searchTime;
+         }
+         for (Channel ch : from.channels)
+         {
+            Channel current = band.find(ch.freq);
+            if (current == null)
+            {
+               if (searched)
+               {
+                  ch.rank = -1;
+               }
+               band.channels.add(ch);
+            } else if (!searched)
+            {
+               current.rank = ch.rank;
+            }
+         }
+      }
+   }
+
+   /** Writes the cache on the I/O thread if it changed since it was loaded
+    *  or last saved. Like PresetStore, a temporary file is synced and
+    *  renamed over the cache.
+    */
+   public void save() {
+      mIoHandler.removeCallbacks(mSave);
+      mIoHandler.post(mSave);
+   }
+
+   /** Saves what is still dirty and stops the I/O thread once the
+    *  queued load and save have run. Later save() calls are dropped.
+    */
+   public void quit() {
+      save();
+      /* Same as HandlerThread.quitSafely(), which this SDK lacks: the
+       * quit runs behind everything already queued
+       */
+      mIoHandler.post(new Runnable() {
+         public void run() {
+            mIoThread.quit();
+         }
+      });
+   }
+
+   private ByteBuffer encode() {
+      int size = 12;
+      for (Band band : mBands)
+      {
+         size += BAND_HEADER_SIZE + (band.channels.size() * CHANNEL_SIZE);
+      }
+      ByteBuffer buf = ByteBuffer.allocate(size);
+      buf.putInt(MAGIC);
+      buf.putInt(VERSION);
+      buf.putInt(mBands.size());
+      for (Band band : mBands)
+      {
+         buf.putInt(band.country);
+         buf.putInt(band.spacing);
+         buf.putLong(band.searchTime);
+         buf.putInt(band.channels.size());
+         for (Channel ch : band.channels)
+         {
+            buf.putInt(ch.freq);
+            buf.putInt(ch.rssi);
+            buf.putInt(ch.pi);
+            buf.putInt(ch.pty);
+            buf.putInt(ch.rank);
+            buf.putLong(ch.lastSeen);
+         }
+      }
+      buf.flip();
+      return buf;
+   }
+
+   private boolean write(ByteBuffer buf) {
+      return StoreFile.writeAtomically(mFile, mTmpFile, new ByteBuffer[] { buf },
+                                       "StationMapCache");
+   }
+}
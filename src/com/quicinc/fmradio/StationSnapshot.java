@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2012, Code Aurora Forum. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *        * Redistributions of source code must retain the above copyright
+ *            notice, this list of conditions and the following disclaimer.
+ *        * Redistributions in binary form must reproduce the above copyright
+ *            notice, this list of conditions and the following disclaimer in the
+ *            documentation and/or other materials provided with the distribution.
+ *        * Neither the name of Code Aurora nor
+ *            the names of its contributors may be used to endorse or promote
+ *            products derived from this software without specific prior written
+ *            permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NON-INFRINGEMENT ARE DISCLAIMED.    IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.quicinc.fmradio;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+
+/**
+ * Tuned station state returned by IFMRadioService.getStationSnapshot()
+ * and pushed through IFMRadioServiceCallbacks.onStationSnapshotChanged(),
+ * so a client can refresh its display with a single binder transaction.
+ */
+public final class StationSnapshot implements Parcelable
+{
+   private static final int FLAG_STEREO = 0x1;
+   private static final int FLAG_MUTED = 0x2;
+   private static final int FLAG_FM_ON = 0x4;
+
+   private final int mFrequency;
+   private final String mProgramService;
+   private final String mRadioText;
+   private final int mProgramType;
+   private final int mProgramId;
+   private final boolean mStereo;
+   private final int mRssi;
+   private final boolean mMuted;
+   private final boolean mFmOn;
+
+   public StationSnapshot(int frequency, String programService,
+                          String radioText, int programType, int programId,
+                          boolean stereo, int rssi, boolean muted,
+                          boolean fmOn)
+   {
+      mFrequency = frequency;
+      mProgramService = (programService == null) ? "" : programService;
+      mRadioText = (radioText == null) ? "" : radioText;
+      mProgramType = programType;
+      mProgramId = programId;
+      mStereo = stereo;
+      mRssi = rssi;
+      mMuted = muted;
+      mFmOn = fmOn;
+   }
+
+   private StationSnapshot(Parcel in)
+   {
+      mFrequency = in.readInt();
+      mProgramService = in.readString();
+      mRadioText = in.readString();
+      mProgramType = in.readInt();
+      mProgramId = in.readInt();
+      mRssi = in.readInt();
+      int flags = in.readInt();
+      mStereo = (flags & FLAG_STEREO) != 0;
+      mMuted = (flags & FLAG_MUTED) != 0;
+      mFmOn = (flags & FLAG_FM_ON) != 0;
+   }
+
+   public int getFrequency()
+   {
+      return mFrequency;
+   }
+
+   public String getProgramService()
+   {
+      return mProgramService;
+   }
+
+   public String getRadioText()
+   {
+      return mRadioText;
+   }
+
+   public int getProgramType()
+   {
+      return mProgramType;
+   }
+
+   public int getProgramId()
+   {
+      return mProgramId;
+   }
+
+   public boolean isStereo()
+   {
+      return mStereo;
+   }
+
+   public int getRssi()
+   {
+      return mRssi;
+   }
+
+   public boolean isMuted()
+   {
+      return mMuted;
+   }
+
+   public boolean isFmOn()
+   {
+      return mFmOn;
+   }
+
+   public int describeContents()
+   {
+      return 0;
+   }
+
+   public void writeToParcel(Parcel dest, int flags)
+   {
+      dest.writeInt(mFrequency);
+      dest.writeString(mProgramService);
+      dest.writeString(mRadioText);
+      dest.writeInt(mProgramType);
+      dest.writeInt(mProgramId);
+      dest.writeInt(mRssi);
+      int bits = 0;
+      if (mStereo)
+      {
+         bits |= FLAG_STEREO;
+      }
+      if (mMuted)
+      {
+         bits |= FLAG_MUTED;
+      }
+      if (mFmOn)
+      {
+         bits |= FLAG_FM_ON;
+      }
+      dest.writeInt(bits);
+   }
+
+   public static final Parcelable.Creator<StationSnapshot> CREATOR =
+      new Parcelable.Creator<StationSnapshot>()
+   {
+      public StationSnapshot createFromParcel(Parcel in)
+      {
+         return new StationSnapshot(in);
+      }
+
+      public StationSnapshot[] newArray(int size)
+      {
+         return new StationSnapshot[size];
+      }
+   };
+
+   @Override
+   public String toString()
+   {
+      return "StationSnapshot{freq=" + mFrequency + " ps=" + mProgramService
+             + " pty=" + mProgramType + " pi=" + mProgramId
+             + " stereo=" + mStereo + " rssi=" + mRssi
+             + " muted=" + mMuted + " on=" + mFmOn + "}";
+   }
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright (c) 2012, Code Aurora Forum. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *        * Redistributions of source code must retain the above copyright
+ *            notice, this list of conditions and the following disclaimer.
+ *        * Redistributions in binary form must reproduce the above copyright
+ *            notice, this list of conditions and the following disclaimer in the
+ *            documentation and/or other materials provided with the distribution.
+ *        * Neither the name of Code Aurora nor
+ *            the names of its contributors may be used to endorse or promote
+ *            products derived from this software without specific prior written
+ *            permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NON-INFRINGEMENT ARE DISCLAIMED.    IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.quicinc.fmradio;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Appends text lines to a log file from a dedicated thread. Callers copy
+ * the line, as ASCII, straight into a pending direct buffer; when it has
+ * no room left the line is dropped and counted rather than blocking the
+ * caller. The writer swaps the pending buffer with its own and writes it
+ * to the file channel once it is half full, or at least every
+ * FLUSH_INTERVAL_MS. When the file exceeds the size limit it is rotated to
+ * <name>.1<ext> (optionally gzip compressed), keeping MAX_ROTATED files.
+ */
+class StatsLogWriter
+{
+   private static final String LOGTAG = "FMStatsLog";
+
+   private static final int BUFFER_SIZE = 16 * 1024;
+   private static final int MAX_ROTATED = 4;
+   private static final int FLUSH_THRESHOLD = BUFFER_SIZE / 2;
+   /* Partial batches are written at least this often */
+   private static final long FLUSH_INTERVAL_MS = 1000;
+
+   private final File mFile;
+   private final String mBaseName;
+   private final String mExtension;
+   private final long mMaxBytes;
+   private final boolean mGzipRotated;
+   private final Thread mThread;
+   private final AtomicLong mDropped = new AtomicLong();
+   private volatile long mWritten = 0;
+
+   /* Filled by write(), guarded by mLock */
+   private final Object mLock = new Object();
+   private ByteBuffer mPending = ByteBuffer.allocateDirect(BUFFER_SIZE);
+   private boolean mClosed = false;
+
+   /* Writer thread state */
+   private ByteBuffer mBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+   private long mLastFlushMs = 0;
+   private RandomAccessFile mRaf;
+   private FileChannel mChannel;
+
+   /* long maxBytes: rotate once the file reaches this size, 0 never rotates */
+   StatsLogWriter(File file, long maxBytes, boolean gzipRotated)
+      throws IOException {
+      mFile = file;
+      String name = file.getName();
+      int dot = name.lastIndexOf('.');
+      mBaseName = (dot > 0) ? name.substring(0, dot) : name;
+      mExtension = (dot > 0) ? name.substring(dot) : "";
+      mMaxBytes = maxBytes;
+      mGzipRotated = gzipRotated;
+      open();
+      mThread = new Thread(mWriter, "FMStatsLogWriter");
+      mThread.start();
+   }
+
+   public String getFileName() {
+      return mFile.getName();
+   }
+
+   /* Copies one line for the writer thread, returns false if it had to be
+    * dropped. Characters outside ASCII are written as '?'.
+    */
+   public boolean write(CharSequence text) {
+      int len = text.length();
+      synchronized (mLock) {
+         if (mClosed || (mPending.remaining() < len)) {
+            mDropped.incrementAndGet();
+            return false;
+         }
+         for (int i = 0; i < len; i++) {
+            char c = text.charAt(i);
+            mPending.put((byte) ((c < 0x80) ? c : '?'));
+         }
+         if (mPending.position() >= FLUSH_THRESHOLD) {
+            mLock.notify();
+         }
+      }
+      return true;
+   }
+
+   public long getDroppedCount() {
+      return mDropped.get();
+   }
+
+   public long getWrittenBytes() {
+      return mWritten;
+   }
+
+   /* Writes out everything already queued, then stops the writer thread */
+   public void close() {
+      synchronized (mLock) {
+         if (mClosed) {
+            return;
+         }
+         mClosed = true;
+         mLock.notify();
+      }
+      try {
+         mThread.join();
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+      }
+      if (mDropped.get() > 0) {
+         Log.d(LOGTAG, mFile.getName() + ": dropped " + mDropped.get()
+                       + " lines");
+      }
+   }
+
+   private final Runnable mWriter = new Runnable() {
+      public void run() {
+         boolean done = false;
+         while (!done) {
+            try {
+               synchronized (mLock) {
+                  while (!mClosed && (mPending.position() < FLUSH_THRESHOLD)) {
+                     long waitMs = FLUSH_INTERVAL_MS
+                        - (SystemClock.uptimeMillis() - mLastFlushMs);
+                     if (waitMs <= 0) {
+                        break;
+                     }
+                     mLock.wait(waitMs);
+                  }
+                  ByteBuffer filled = mPending;
+                  mPending = mBuffer;
+                  mBuffer = filled;
+                  done = mClosed;
+               }
+               flush();
+               if ((mMaxBytes > 0) && (mChannel.size() >= mMaxBytes)) {
+                  rotate();
+               }
+            } catch (InterruptedException e) {
+               done = true;
+            } catch (IOException e) {
+               Log.e(LOGTAG, "write failed: " + e);
+               mBuffer.clear();
+            }
+         }
+         try {
+            flush();
+            mChannel.close();
+            mRaf.close();
+         } catch (IOException e) {
+            Log.e(LOGTAG, "close failed: " + e);
+         }
+      }
+   };
+
+   private void open() throws IOException {
+      mRaf = new RandomAccessFile(mFile, "rw");
+      mChannel = mRaf.getChannel();
+      mChannel.position(mChannel.size());
+   }
+
+   private void flush() throws IOException {
+      mBuffer.flip();
+      while (mBuffer.hasRemaining()) {
+         mWritten += mChannel.write(mBuffer);
+      }
+      mBuffer.clear();
+      mLastFlushMs = SystemClock.uptimeMillis();
+   }
+
+   private File rotatedFile(int index) {
+      return new File(mFile.getParentFile(), mBaseName + "." + index
+                      + mExtension + (mGzipRotated ? ".gz" : ""));
+   }
+
+   /* Shifts <name>.N to <name>.N+1 and moves the current file to <name>.1 */
+   private void rotate() throws IOException {
+      mChannel.close();
+      mRaf.close();
+      rotatedFile(MAX_ROTATED).delete();
+      for (int i = MAX_ROTATED - 1; i > 0; i--) {
+         File from = rotatedFile(i);
+         if (from.exists()) {
+            from.renameTo(rotatedFile(i + 1));
+         }
+      }
+      if (mGzipRotated) {
+         gzip(mFile, rotatedFile(1));
+         mFile.delete();
+      } else {
+         mFile.renameTo(rotatedFile(1));
+      }
+      Log.d(LOGTAG, "rotated " + mFile.getName());
+      open();
+   }
+
+   private void gzip(File from, File to) throws IOException {
+      FileInputStream in = new FileInputStream(from);
+      GZIPOutputStream out = null;
+      try {
+         out = new GZIPOutputStream(new FileOutputStream(to));
+         byte[] buf = new byte[BUFFER_SIZE];
+         int len;
+         while ((len = in.read(buf)) > 0) {
+            out.write(buf, 0, len);
+         }
+      } finally {
+         in.close();
+         if (out != null) {
+            out.close();
+         }
+      }
+   }
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright (c) 2012, Code Aurora Forum. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *        * Redistributions of source code must retain the above copyright
+ *            notice, this list of conditions and the following disclaimer.
+ *        * Redistributions in binary form must reproduce the above copyright
+ *            notice, this list of conditions and the following disclaimer in the
+ *            documentation and/or other materials provided with the distribution.
+ *        * Neither the name of Code Aurora nor
+ *            the names of its contributors may be used to endorse or promote
+ *            products derived from this software without specific prior written
+ *            permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NON-INFRINGEMENT ARE DISCLAIMED.    IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.quicinc.fmradio;
+
+/**
+ * Signal quality samples collected by FMStats, stored as one int column per
+ * metric in a ring that grows up to a retention limit and then overwrites
+ * the oldest sample. Every sample gets a sequence number; a sequence stays
+ * readable until the sample is overwritten. Nothing is converted to text
+ * until a row is displayed or exported, so sampling allocates nothing once
+ * the ring has reached its size.
+ *
+ * All methods are synchronized: samples are added from worker and binder
+ * threads while the UI thread reads them.
+ */
+class StatsResults
+{
+   private static final int INITIAL_CAPACITY = 64;
+   public static final int DEFAULT_LIMIT = 4096;
+   /* Width of one column in the exported text */
+   private static final int COLUMN_WIDTH = 10;
+
+   private int mLimit;
+   private int[] mFreq;
+   private int[] mRssi;
+   private int[] mIoC;
+   private int[] mIntDet;
+   private int[] mMpxDcc;
+   private int[] mSinr;
+   /* Physical index of the oldest sample, number of samples held and
+    * sequence number of the oldest sample */
+   private int mStart = 0;
+   private int mSize = 0;
+   private int mFirstSeq = 0;
+
+   StatsResults() {
+      this(DEFAULT_LIMIT);
+   }
+
+   StatsResults(int limit) {
+      mLimit = Math.max(1, limit);
+      allocate(Math.min(INITIAL_CAPACITY, mLimit));
+   }
+
+   /* Sets how many samples are retained; shrinking keeps the newest */
+   public synchronized void setLimit(int limit) {
+      mLimit = Math.max(1, limit);
+      if (mFreq.length > mLimit) {
+         resize(mLimit);
+      }
+   }
+
+   private void allocate(int capacity) {
+      mFreq = new int[capacity];
+      mRssi = new int[capacity];
+      mIoC = new int[capacity];
+      mIntDet = new int[capacity];
+      mMpxDcc = new int[capacity];
+      mSinr = new int[capacity];
+   }
+
+   /* Stores one sample and returns its sequence number */
+   public synchronized int add(int freq, int rssi, int ioc, int intDet,
+                               int mpxDcc, int sinr) {
+      int capacity = mFreq.length;
+      if ((mSize == capacity) && (capacity < mLimit)) {
+         resize(Math.min(capacity * 2, mLimit));
+         capacity = mFreq.length;
+      }
+      int index;
+      if (mSize == capacity) {
+         /* Full: overwrite the oldest sample */
+         index = mStart;
+         mStart = (mStart + 1) % capacity;
+         mFirstSeq++;
+      } else {
+         index = (mStart + mSize) % capacity;
+         mSize++;
+      }
+      mFreq[index] = freq;
+      mRssi[index] = rssi;
+      mIoC[index] = ioc;
+      mIntDet[index] = intDet;
+      mMpxDcc[index] = mpxDcc;
+      mSinr[index] = sinr;
+      return mFirstSeq + mSize - 1;
+   }
+
+   private void resize(int capacity) {
+      int[] freq = mFreq, rssi = mRssi, ioc = mIoC;
+      int[] intDet = mIntDet, mpxDcc = mMpxDcc, sinr = mSinr;
+      int oldCapacity = freq.length;
+      int keep = Math.min(mSize, capacity);
+      /* When shrinking, the newest samples are the ones kept */
+      int from = mStart + (mSize - keep);
+      allocate(capacity);
+      for (int i = 0; i < keep; i++) {
+         int src = (from + i) % oldCapacity;
+         mFreq[i] = freq[src];
+         mRssi[i] = rssi[src];
+         mIoC[i] = ioc[src];
+         mIntDet[i] = intDet[src];
+         mMpxDcc[i] = mpxDcc[src];
+         mSinr[i] = sinr[src];
+      }
+      mFirstSeq += mSize - keep;
+      mStart = 0;
+      mSize = keep;
+   }
+
+   public synchronized void clear() {
+      mFirstSeq += mSize;
+      mStart = 0;
+      mSize = 0;
+   }
+
+   public synchronized int size() {
+      return mSize;
+   }
+
+   /* Sequence number of the oldest sample still held */
+   public synchronized int firstSeq() {
+      return mFirstSeq;
+   }
+
+   public synchronized boolean contains(int seq) {
+      return (seq >= mFirstSeq) && (seq < (mFirstSeq + mSize));
+   }
+
+   private int index(int seq) {
+      if (!contains(seq)) {
+         throw new IndexOutOfBoundsException("sample " + seq + " not held");
+      }
+      return (mStart + (seq - mFirstSeq)) % mFreq.length;
+   }
+
+   public synchronized int getFreq(int seq) {
+      return mFreq[index(seq)];
+   }
+
+   public synchronized int getRssi(int seq) {
+      return mRssi[index(seq)];
+   }
+
+   public synchronized int getIoC(int seq) {
+      return mIoC[index(seq)];
+   }
+
+   public synchronized int getIntDet(int seq) {
+      return mIntDet[index(seq)];
+   }
+
+   public synchronized int getMpxDcc(int seq) {
+      return mMpxDcc[index(seq)];
+   }
+
+   public synchronized int getSinr(int seq) {
+      return mSinr[index(seq)];
+   }
+
+   /* Appends the export line for one sample: Freq, RSSI, IoC, IntDet and
+    * either SINR or MpxDcc, each right aligned in a fixed width column */
+   public synchronized void appendRow(StringBuilder sb, int seq,
+                                      boolean useSinr) {
+      int i = index(seq);
+      appendColumn(sb, mFreq[i]);
+      appendColumn(sb, mRssi[i]);
+      appendColumn(sb, mIoC[i]);
+      appendColumn(sb, mIntDet[i]);
+      appendColumn(sb, useSinr ? mSinr[i] : mMpxDcc[i]);
+      sb.append("\r\n");
+   }
+
+   static void appendColumn(StringBuilder sb, int value) {
+      int start = sb.length();
+      sb.append(value);
+      padColumn(sb, start);
+   }
+
+   static void appendColumn(StringBuilder sb, String value) {
+      int start = sb.length();
+      sb.append(value);
+      padColumn(sb, start);
+   }
+
+   private static void padColumn(StringBuilder sb, int start) {
+      for (int pad = COLUMN_WIDTH - (sb.length() - start); pad > 0; pad--) {
+         sb.insert(start, ' ');
+      }
+   }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2012, Code Aurora Forum. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *        * Redistributions of source code must retain the above copyright
+ *            notice, this list of conditions and the following disclaimer.
+ *        * Redistributions in binary form must reproduce the above copyright
+ *            notice, this list of conditions and the following disclaimer in the
+ *            documentation and/or other materials provided with the distribution.
+ *        * Neither the name of Code Aurora nor
+ *            the names of its contributors may be used to endorse or promote
+ *            products derived from this software without specific prior written
+ *            permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NON-INFRINGEMENT ARE DISCLAIMED.    IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.quicinc.fmradio;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import android.util.Log;
+
+/*
+ * File helpers shared by PresetStore and StationMapCache.
+ */
+public final class StoreFile
+{
+   private static final String LOGTAG = FMRadio.LOGTAG;
+
+   private StoreFile() {
+   }
+
+   /** Replaces "file" with the contents of "buffers".
+    *  The data goes to "tmpFile" first, is synced and then renamed over
+    *  "file", so a crash mid-write leaves the previous file intact.
+    *
+    * @return true if the file was written.
+    */
+   public static boolean writeAtomically(File file, File tmpFile,
+                                         ByteBuffer[] buffers, String name) {
+      long total = 0;
+      for (int i = 0; i < buffers.length; i++)
+      {
+         total += buffers[i].remaining();
+      }
+      FileOutputStream out = null;
+      try
+      {
+         out = new FileOutputStream(tmpFile);
+         FileChannel channel = out.getChannel();
+         long written = 0;
+         while (written < total)
+         {
+            written += channel.write(buffers);
+         }
+         /* The data must be on disk before the rename can replace the file */
+         channel.force(true);
+      } catch (IOException e)
+      {
+         Log.e(LOGTAG, name + ": write failed", e);
+         closeQuietly(out);
+         tmpFile.delete();
+         return false;
+      }
+      closeQuietly(out);
+      if (!tmpFile.renameTo(file))
+      {
+         Log.e(LOGTAG, name + ": rename failed");
+         tmpFile.delete();
+         return false;
+      }
+      return true;
+   }
+
+   public static void closeQuietly(Closeable c) {
+      if (c != null)
+      {
+         try
+         {
+            c.close();
+         } catch (IOException e)
+         {
+         }
+      }
+   }
+}
@@ -27,6 +27,7 @@ import android.util.SparseArray;
 import android.view.LayoutInflater;
 import android.widget.FrameLayout;
 
+import com.quicinc.fmradio.FrequencySteps;
 import com.quicinc.fmradio.R;
 import android.widget.NumberPicker;
 import android.widget.NumberPicker.OnValueChangeListener;
@@ -54,6 +55,10 @@ public class FrequencyPicker extends FrameLayout {
     private int mStep;
     private int mMhz;
     private int mKhz;
+    /* kHz layout and band the spinners were last set up for */
+    private FrequencySteps mSteps;
+    private int mRangeMin = -1;
+    private int mRangeMax = -1;
 
     /**
      * The callback used to indicate the user changes the Frequency.
@@ -88,7 +93,7 @@ public class FrequencyPicker extends FrameLayout {
            mMHzPicker.setOnValueChangedListener(new OnValueChangeListener() {
               public void onValueChange(NumberPicker picker, int oldVal, int newVal) {
                   mMhz = newVal;
-                  mFrequency = (mMhz*1000) + (getFrequencyKHz(mKhz, mMin, mStep));
+                  mFrequency = (mMhz*1000) + mSteps.getKHz(mKhz);
                   validateFrequencyRange();
                   if (mOnFrequencyChangedListener != null) {
                         mOnFrequencyChangedListener.onFrequencyChanged(FrequencyPicker.this, mFrequency);
@@ -102,7 +107,7 @@ public class FrequencyPicker extends FrameLayout {
            mKHzPicker.setOnValueChangedListener(new OnValueChangeListener() {
               public void onValueChange(NumberPicker picker, int oldVal, int newVal) {
                   mKhz = newVal;
-                  mFrequency = (mMhz*1000) + (getFrequencyKHz(mKhz, mMin, mStep));
+                  mFrequency = (mMhz*1000) + mSteps.getKHz(mKhz);
 
                   validateFrequencyRange();
 
@@ -208,140 +213,6 @@ public class FrequencyPicker extends FrameLayout {
         mKhz = ss.getKHz();
     }
 
-    private String[] getKHzStrings(int min, int stepSize)
-    {
-            if(stepSize == 100)
-            {
-                    return (get100KHzStrings());
-            }
-            else if(stepSize == 50)
-            {
-                    return (get50KHzStrings());
-            }
-                   return (get200KHzStrings(min));
-    }
-
-    private int getKHzCount(int stepSize)
-    {
-            if(stepSize == 100)
-            {
-                    return (10);
-            }
-            else if(stepSize == 50)
-            {
-                    return (20);
-            }
-                   return (5);
-    }
-    private int getCurrentKHz(int frequency, int min, int stepSize)
-    {
-            if(stepSize == 100)
-            {
-                    return (getCurrent100KHz(frequency));
-            }
-            else if(stepSize == 50)
-            {
-                    return (getCurrent50KHz(frequency));
-            }
-                   return (getCurrent200KHz(frequency, min));
-    }
-
-    private int getFrequencyKHz(int kHz, int min, int stepSize)
-    {
-            if(stepSize == 100)
-            {
-                    return (getFrequency100KHz(kHz));
-            }
-            else if(stepSize == 50)
-            {
-                    return (getFrequency50KHz(kHz));
-            }
-                   return (getFrequency200KHz(kHz, min));
-    }
-
-    private int getFrequency100KHz(int kHz)
-    {
-            int frequencykhz = ((kHz-1)*100) ;
-        //Log.d("FMRadio", "FP: getCurrent100KHz: " + frequencykhz);
-                   return (frequencykhz);
-    }
-
-    private int getFrequency50KHz(int kHz)
-    {
-            int frequencykhz = ((kHz-1)*50) ;
-        //Log.d("FMRadio", "FP: getCurrent100KHz: " + frequencykhz);
-                   return (frequencykhz);
-    }
-
-    private int getFrequency200KHz(int kHz, int min)
-    {
-            int frequencykhz = ((kHz-1)*200) ;
-            if(min%200 != 0)
-            {
-                    frequencykhz = ((kHz-1)*200)+100 ;
-            }
-            //Log.d("FMRadio", "FP: getCurrent200KHz: " + frequencykhz);
-                   return (frequencykhz);
-    }
-
-    private int getCurrent100KHz(int frequency)
-    {
-            int khz = ((frequency%1000)/100) ;
-        //Log.d("FMRadio", "FP: getCurrent100KHz: " + khz);
-                   return (khz+1);
-    }
-
-    private int getCurrent50KHz(int frequency)
-    {
-            int khz = ((frequency%1000)/50)  ;
-        //Log.d("FMRadio", "FP: getCurrent50KHz: " + khz);
-                   return (khz+1);
-    }
-
-    private int getCurrent200KHz(int frequency, int min)
-    {
-            int khz = ((frequency%1000)/200);
-        //Log.d("FMRadio", "FP: getCurrent200KHz: " + khz);
-                   return (khz+1);
-    }
-
-    private String[] get50KHzStrings()
-    {
-                   String[] khzStrings= {"00","05","10","15","20","25","30","35","40","45",
-                                                 "50","55","60","65","70","75","80","85","90","95"};
-        //Log.d("FMRadio", "FP: get50KHzStrings");
-            return khzStrings;
-    }
-
-    private String[] get100KHzStrings()
-    {
-                   String[] khzStrings= {"0","1","2","3","4","5",
-                                         "6","7","8","9"};
-        //Log.d("FMRadio", "FP: get100KHzStrings");
-            return khzStrings;
-    }
-
-    private String[] get200KHzStrings(int min)
-    {
-            if(min%200 == 0)
-            {
-                    return (getEven200KHzStrings());
-            }
-                   return (getOdd200KHzStrings());
-    }
-
-    private String[] getEven200KHzStrings()
-    {
-                   String[] khzStrings= {"0","2","4","6","8"};
-        //Log.d("FMRadio", "FP: getEven200KHzStrings");
-            return khzStrings;
-    }
-    private String[] getOdd200KHzStrings()
-    {
-                   String[] khzStrings= {"1","3","5","7","9"};
-        //Log.d("FMRadio", "FP: getOdd200KHzStrings");
-            return khzStrings;
-    }
     public void updateSteps(int steps)
     {
        mStep = steps;
@@ -373,26 +244,32 @@ public class FrequencyPicker extends FrameLayout {
         updateSpinners();
     }
     private void updateSpinnerRange() {
-        String[] khzStrings = getKHzStrings(mMin, mStep);
-        int khzNumSteps = getKHzCount(mStep);
+        FrequencySteps steps = FrequencySteps.get(mMin, mStep);
+        if ((steps == mSteps) && (mMin == mRangeMin) && (mMax == mRangeMax)) {
+            return;
+        }
+        mSteps = steps;
+        mRangeMin = mMin;
+        mRangeMax = mMax;
 
         if (mMHzPicker != null) {
            mMHzPicker.setMinValue(mMin/1000);
            mMHzPicker.setMaxValue(mMax/1000);
         }
         if (mKHzPicker != null) {
-           mKHzPicker.setDisplayedValues(get50KHzStrings());
+           /* Widest labels first, so the max value always has a label */
+           mKHzPicker.setDisplayedValues(FrequencySteps.widest().getLabels());
            mKHzPicker.setMinValue(1);
-           mKHzPicker.setMaxValue(khzNumSteps);
-           mKHzPicker.setDisplayedValues(khzStrings);
+           mKHzPicker.setMaxValue(steps.getCount());
+           mKHzPicker.setDisplayedValues(steps.getLabels());
         }
     }
 
     private void updateSpinners() {
-        int khzNumSteps = getKHzCount(mStep);
         updateSpinnerRange();
+        int khzNumSteps = mSteps.getCount();
         mMhz = (int)(mFrequency/1000);
-            mKhz = getCurrentKHz(mFrequency, mMin, mStep) ;
+        mKhz = mSteps.getIndex(mFrequency);
         if((mMin/1000 <=mMhz) && (mMax/1000 >=mMhz))
         {
             mMHzPicker.setValue(mMhz);
@@ -404,19 +281,10 @@ public class FrequencyPicker extends FrameLayout {
     }
     private void validateFrequencyRange()
     {
-            boolean bUpdateSpinner=false;
-        if(mFrequency < mMin)
-        {
-                mFrequency = mMin;
-                bUpdateSpinner = true;
-        }
-        if(mFrequency > mMax)
-        {
-                mFrequency = mMax;
-                bUpdateSpinner = true;
-        }
-        if(bUpdateSpinner == true)
+        int frequency = FrequencySteps.clamp(mFrequency, mMin, mMax);
+        if(frequency != mFrequency)
         {
+                mFrequency = frequency;
                 updateSpinners();
         }
     }